@@ -0,0 +1,52 @@
+package net.r0adkll.benchmark.flocking;
+
+import net.r0adkll.flocking.Flockable;
+import net.r0adkll.flocking.utils.FRectangle;
+import net.r0adkll.flocking.utils.Vector2D;
+
+/**
+ * A bare Flockable with nothing to draw, so that the benchmarks
+ * only measure the engine
+ * 
+ * @author r0adkll
+ *
+ */
+public class BenchBoid implements Flockable {
+
+	Vector2D position;
+	Vector2D velocity;
+	FRectangle bounds;
+	float rotation;
+	
+	/**
+	 * Constructor
+	 * @param pos		the initial position of the boid
+	 * @param vel		the initial velocity of the boid
+	 */
+	public BenchBoid(Vector2D pos, Vector2D vel){
+		this.position = pos;
+		this.velocity = vel;
+		this.bounds = new FRectangle(pos.x, pos.y, 8, 8);
+	}
+	
+	@Override
+	public Vector2D getPosition() {
+		return position;
+	}
+
+	@Override
+	public Vector2D getVelocity() {
+		return velocity;
+	}
+
+	@Override
+	public void setRotation(float value) {
+		rotation = value;
+	}
+
+	@Override
+	public FRectangle getBounds() {
+		return bounds;
+	}
+
+}
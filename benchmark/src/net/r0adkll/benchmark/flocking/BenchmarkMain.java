@@ -0,0 +1,33 @@
+package net.r0adkll.benchmark.flocking;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the flocking benchmarks with the GC profiler attached, so the
+ * allocation rate (gc.alloc.rate.norm, bytes per tick or query) is
+ * reported next to each time.
+ * 
+ * Takes the usual JMH command line options, ie. to only run the grid
+ * updates of the 100k boid flock:
+ * 
+ * 		UpdateBenchmark -p size=100000 -p index=grid
+ * 
+ * @author r0adkll
+ *
+ */
+public class BenchmarkMain {
+
+	public static void main(String[] args) throws Exception {
+		Options options = new OptionsBuilder()
+				.parent(new CommandLineOptions(args))
+				.addProfiler(GCProfiler.class)
+				.build();
+		
+		new Runner(options).run();
+	}
+	
+}
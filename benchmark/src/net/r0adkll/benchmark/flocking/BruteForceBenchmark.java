@@ -0,0 +1,61 @@
+package net.r0adkll.benchmark.flocking;
+
+import java.util.concurrent.TimeUnit;
+
+import net.r0adkll.flocking.FlockEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures one tick of {@link FlockEngine#update(float)} without a spatial
+ * index, the baseline the indexes are compared against. Brute force goes
+ * through the whole flock for every boid, so it stops at 10k boids where a
+ * single tick already takes a good fraction of a second.
+ * 
+ * @author r0adkll
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BruteForceBenchmark {
+
+	@Param({"1000", "10000"})
+	public int size;
+	
+	@Param({"uniform", "clustered"})
+	public String distribution;
+	
+	@Param({"false", "true"})
+	public boolean arrays;
+	
+	@Param({"false", "true"})
+	public boolean rules;
+	
+	FlockEngine engine;
+	
+	@Setup(Level.Iteration)
+	public void setup(){
+		engine = Scene.createEngine(size, distribution, "brute", arrays, rules);
+	}
+	
+	@Benchmark
+	public void update(){
+		engine.update(1 / 60f);
+	}
+	
+}
@@ -0,0 +1,98 @@
+package net.r0adkll.benchmark.flocking;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import net.r0adkll.flocking.FlockEngine;
+import net.r0adkll.flocking.FlockGrid;
+import net.r0adkll.flocking.Flockable;
+import net.r0adkll.flocking.NeighbourVisitor;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures a single neighbour query of the {@link FlockGrid}, both through
+ * {@link FlockGrid#nearByObjects(float, float)} which collects the boids into
+ * a list, and through the visitor the engine uses. The queries go round the
+ * positions of the boids in the order they were added.
+ * 
+ * @author r0adkll
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NearbyBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int size;
+	
+	@Param({"uniform", "clustered"})
+	public String distribution;
+	
+	FlockGrid grid;
+	float[] queryX, queryY;
+	int next;
+	
+	// Counts the slots it's handed so the query can't be optimized away
+	CountingVisitor counter = new CountingVisitor();
+	
+	@Setup(Level.Trial)
+	public void setup(){
+		FlockEngine engine = Scene.createEngine(size, distribution, "grid", false, false);
+		grid = (FlockGrid) engine.getSpatialIndex();
+		
+		// The same seed gives the same flock that was added to the engine
+		List<Flockable> flock = Scene.createFlock(size, distribution);
+		queryX = new float[size];
+		queryY = new float[size];
+		for(int i=0; i<size; i++){
+			queryX[i] = flock.get(i).getPosition().x;
+			queryY[i] = flock.get(i).getPosition().y;
+		}
+	}
+	
+	@Benchmark
+	public List<Flockable> nearByObjects(){
+		int i = nextQuery();
+		return grid.nearByObjects(queryX[i], queryY[i]);
+	}
+	
+	@Benchmark
+	public int forEachNearby(){
+		int i = nextQuery();
+		counter.count = 0;
+		grid.forEachNearby(queryX[i], queryY[i], counter);
+		return counter.count;
+	}
+	
+	private int nextQuery(){
+		int i = next;
+		next = i + 1 == size ? 0 : i + 1;
+		return i;
+	}
+	
+	static class CountingVisitor implements NeighbourVisitor {
+		int count;
+		
+		@Override
+		public void visit(int[] slots, int from, int to) {
+			count += to - from;
+		}
+	}
+	
+}
@@ -0,0 +1,150 @@
+package net.r0adkll.benchmark.flocking;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import net.r0adkll.flocking.FlockEngine;
+import net.r0adkll.flocking.Flockable;
+import net.r0adkll.flocking.rules.BoundRule;
+import net.r0adkll.flocking.rules.HazardRule;
+import net.r0adkll.flocking.rules.RectCollisionRule;
+import net.r0adkll.flocking.rules.WindRule;
+import net.r0adkll.flocking.utils.FRectangle;
+import net.r0adkll.flocking.utils.Vector2D;
+
+/**
+ * Builds the flocks and engines that the benchmarks run on. Every scene
+ * is generated from a fixed seed so runs can be compared with each other.
+ * 
+ * The world grows with the flock so that the average density, and with it
+ * the number of neighbours of a uniformly spread boid, stays the same
+ * whatever the size of the flock.
+ * 
+ * @author r0adkll
+ *
+ */
+public class Scene {
+
+	/**************************************************************************
+	 * Constants
+	 */
+	
+	// The area of the world per boid
+	public static final float AREA_PER_BOID = 400;
+	
+	// The size of the grid cells, the same as the interaction radius
+	public static final int GRID_SIZE = 18;
+	
+	// The number of balls a clustered flock is bunched up into
+	public static final int CLUSTERS = 8;
+	
+	// The seed every scene is generated from
+	public static final long SEED = 42;
+	
+	
+	/**************************************************************************
+	 * Scene Methods
+	 */
+	
+	/**
+	 * Get the width&height of the square world a flock lives in
+	 * @param size		the number of boids
+	 */
+	public static float worldSize(int size){
+		return (float) Math.sqrt(size * AREA_PER_BOID);
+	}
+	
+	/**
+	 * Generate a flock
+	 * 
+	 * @param size			the number of boids
+	 * @param distribution	"uniform" to spread the boids over the whole world, or
+	 * 						"clustered" to bunch them up into a few tight balls
+	 * @return				the boids
+	 */
+	public static List<Flockable> createFlock(int size, String distribution){
+		Random random = new Random(SEED);
+		float world = worldSize(size);
+		boolean clustered = "clustered".equals(distribution);
+		
+		// The centers of the balls and how spread out the boids are around them
+		float[] centers = new float[CLUSTERS * 2];
+		for(int i=0; i<centers.length; i++){
+			centers[i] = world * (0.1f + 0.8f * random.nextFloat());
+		}
+		float spread = world / 64;
+		
+		List<Flockable> flock = new ArrayList<Flockable>(size);
+		for(int i=0; i<size; i++){
+			float x, y;
+			if(clustered){
+				int c = random.nextInt(CLUSTERS);
+				x = centers[c * 2] + (float) random.nextGaussian() * spread;
+				y = centers[c * 2 + 1] + (float) random.nextGaussian() * spread;
+			}else{
+				x = random.nextFloat() * world;
+				y = random.nextFloat() * world;
+			}
+			
+			Vector2D vel = new Vector2D(random.nextFloat() * 40 - 20, random.nextFloat() * 40 - 20);
+			flock.add(new BenchBoid(new Vector2D(x, y), vel));
+		}
+		return flock;
+	}
+	
+	/**
+	 * Create an engine set up like the example and fill it with a flock
+	 * 
+	 * @param size			the number of boids
+	 * @param distribution	see {@link #createFlock(int, String)}
+	 * @param index			the spatial index to enable, one of "brute", "grid", "compact",
+	 * 						"hashed", "quadtree" or "kdtree"
+	 * @param arrays		true to enable the array storage
+	 * @param rules			true to add one of each of the other built-in rules, the flock
+	 * 						is always kept in the world by a bound rule so every index
+	 * 						tracks the same boids however long it's stepped
+	 * @return				the engine
+	 */
+	public static FlockEngine createEngine(int size, String distribution, String index, boolean arrays, boolean rules){
+		float world = worldSize(size);
+		FRectangle bounds = new FRectangle(0, 0, world, world);
+		
+		FlockEngine engine = new FlockEngine();
+		engine.setAlignment(0.80f);
+		engine.setCohesion(0.65f);
+		engine.setSeparation(0.60f);
+		engine.setInteractionRadius(18);
+		engine.setSeparationRadius(12);
+		engine.setInnerSeperationRadius(7);
+		engine.setSpeedLimit(80);
+		
+		if(arrays) engine.enableArrayStorage();
+		
+		if("grid".equals(index)){
+			engine.enableGrid(GRID_SIZE, bounds);
+		}else if("compact".equals(index)){
+			engine.enableCompactGrid(GRID_SIZE, bounds);
+		}else if("hashed".equals(index)){
+			engine.enableHashedGrid(GRID_SIZE);
+		}else if("quadtree".equals(index)){
+			engine.enableQuadtree(bounds);
+		}else if("kdtree".equals(index)){
+			engine.enableKdTree();
+		}else if(!"brute".equals(index)){
+			throw new IllegalArgumentException("Unknown index: " + index);
+		}
+		
+		engine.addRule(new BoundRule(bounds, 75));
+		if(rules){
+			float mid = world / 2;
+			engine.addRule(new WindRule(new Vector2D(2, 0)));
+			engine.addRule(new HazardRule(new BenchBoid(new Vector2D(mid, mid), new Vector2D()), 40, 5));
+			engine.addRule(new RectCollisionRule(new FRectangle(mid / 2, mid / 2, 60, 60)));
+		}
+		
+		engine.addBoids(createFlock(size, distribution));
+		return engine;
+	}
+	
+}
@@ -0,0 +1,67 @@
+package net.r0adkll.benchmark.flocking;
+
+import java.util.concurrent.TimeUnit;
+
+import net.r0adkll.flocking.FlockEngine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures one tick of {@link FlockEngine#update(float)} with each of the
+ * spatial indexes, for flocks of 1k to 1M boids. Each iteration starts from
+ * the same generated flock, which then keeps flocking from tick to tick, so
+ * the numbers don't depend on how many iterations came before.
+ * 
+ * The million boid flocks take a while to set up, pick the parameters to run
+ * with -p, ie. -p size=1000,10000 -p index=grid
+ * 
+ * @author r0adkll
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 10, time = 2)
+@Fork(1)
+public class UpdateBenchmark {
+
+	@Param({"1000", "10000", "100000", "1000000"})
+	public int size;
+	
+	@Param({"grid", "compact", "hashed", "quadtree", "kdtree"})
+	public String index;
+	
+	@Param({"uniform", "clustered"})
+	public String distribution;
+	
+	@Param({"false", "true"})
+	public boolean arrays;
+	
+	@Param({"false", "true"})
+	public boolean rules;
+	
+	FlockEngine engine;
+	
+	@Setup(Level.Iteration)
+	public void setup(){
+		engine = Scene.createEngine(size, distribution, index, arrays, rules);
+	}
+	
+	@Benchmark
+	public void update(){
+		engine.update(1 / 60f);
+	}
+	
+}
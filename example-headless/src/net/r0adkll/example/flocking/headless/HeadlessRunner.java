@@ -0,0 +1,141 @@
+package net.r0adkll.example.flocking.headless;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+import net.r0adkll.flocking.FlockEngine;
+import net.r0adkll.flocking.FlockMetrics;
+import net.r0adkll.flocking.FlockMetricsListener;
+
+/**
+ * Runs a scenario of the engine without any graphics, as fast as it can
+ * go, and prints out how fast that was:
+ * 
+ *  - ticks/sec			the number of updates per second
+ *  - boid-updates/sec	the number of boids stepped per second, with the level of
+ *  					detail mode or a time budget that's only known with metrics=true
+ *  - tick latency		the 50th, 90th, 99th and 99.9th percentile and
+ *  					the longest time a single update took
+ * 
+ * With metrics=true the time of each phase of the update is recorded as
+ * well and printed out as the average per tick.
+ * 
+ * Usage: HeadlessRunner scenario.properties [key=value ...]
+ * 
+ * @author r0adkll
+ *
+ */
+public class HeadlessRunner {
+
+	public static void main(String[] args) throws Exception {
+		if(args.length < 1){
+			System.err.println("Usage: HeadlessRunner scenario.properties [key=value ...]");
+			System.exit(1);
+		}
+		
+		Scenario scenario = Scenario.load(args[0], Arrays.copyOfRange(args, 1, args.length));
+		System.out.println("Scenario: " + scenario);
+		
+		long start = System.nanoTime();
+		FlockEngine engine = scenario.createEngine();
+		System.out.println(String.format(Locale.US, "Setup: %.1f ms", (System.nanoTime() - start) / 1e6));
+		
+		// Let the JIT settle before measuring
+		for(int i=0; i<scenario.warmup; i++){
+			engine.update(scenario.elapsed);
+		}
+		
+		PhaseTotals phases = null;
+		if(scenario.metrics){
+			phases = new PhaseTotals();
+			engine.setMetricsListener(phases);
+		}
+		
+		long[] latencies = new long[scenario.ticks];
+		start = System.nanoTime();
+		for(int i=0; i<scenario.ticks; i++){
+			long tick = System.nanoTime();
+			engine.update(scenario.elapsed);
+			latencies[i] = System.nanoTime() - tick;
+		}
+		long total = System.nanoTime() - start;
+		
+		report(scenario, latencies, total, phases);
+		if(phases != null) phases.report();
+	}
+	
+	/**
+	 * Print out the throughput and latency of a run
+	 * 
+	 * @param scenario		the scenario that was run
+	 * @param latencies		the time each tick took, in nanoseconds
+	 * @param total			the time the whole run took, in nanoseconds
+	 * @param phases		the metrics of the run, or null if they weren't recorded
+	 */
+	private static void report(Scenario scenario, long[] latencies, long total, PhaseTotals phases){
+		double seconds = total / 1e9;
+		Arrays.sort(latencies);
+		
+		System.out.println(String.format(Locale.US, "Ticks: %d in %.3f s", latencies.length, seconds));
+		System.out.println(String.format(Locale.US, "ticks/sec: %.1f", latencies.length / seconds));
+		
+		// Not every boid is stepped on every tick with the level of detail mode or a time budget
+		if(phases != null){
+			System.out.println(String.format(Locale.US, "boid-updates/sec: %.0f", phases.stepped / seconds));
+		}else if(scenario.lodInterval > 0 || scenario.budget > 0){
+			System.out.println("boid-updates/sec: n/a, not every boid is stepped on every tick, run with metrics=true to count them");
+		}else{
+			System.out.println(String.format(Locale.US, "boid-updates/sec: %.0f", (double) latencies.length * scenario.boids / seconds));
+		}
+		System.out.println(String.format(Locale.US, "tick latency (ms): p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f",
+				percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+				percentile(latencies, 99.9), percentile(latencies, 100)));
+	}
+	
+	/**
+	 * Sums up the metrics of every measured tick
+	 */
+	private static class PhaseTotals implements FlockMetricsListener {
+		long ticks, sync, index, step, steering, rules, integration;
+		long stepped, cells, candidates, neighbours, listBuilds;
+		
+		@Override
+		public void onUpdate(FlockMetrics metrics) {
+			ticks++;
+			stepped += metrics.stepped;
+			sync += metrics.syncNanos;
+			index += metrics.indexNanos;
+			step += metrics.stepNanos;
+			steering += metrics.steeringNanos;
+			rules += metrics.rulesNanos;
+			integration += metrics.integrationNanos;
+			cells += metrics.cellsVisited;
+			candidates += metrics.candidates;
+			neighbours += metrics.neighbours;
+			if(metrics.listsBuilt) listBuilds++;
+		}
+		
+		void report(){
+			if(ticks == 0) return;
+			double ms = 1e6 * ticks;
+			System.out.println(String.format(Locale.US, "phases (ms/tick): sync=%.3f rules=%.3f index=%.3f step=%.3f (steering=%.3f integration=%.3f)",
+					sync / ms, rules / ms, index / ms, step / ms, steering / ms, integration / ms));
+			System.out.println(String.format(Locale.US, "per tick: cells=%d candidates=%d neighbours=%d",
+					cells / ticks, candidates / ticks, neighbours / ticks));
+			if(listBuilds > 0){
+				System.out.println(String.format(Locale.US, "neighbour lists built on %d of %d ticks", listBuilds, ticks));
+			}
+		}
+	}
+	
+	/**
+	 * Get a percentile of the sorted latencies with the nearest rank method
+	 * @return		the latency in milliseconds
+	 */
+	private static double percentile(long[] sorted, double percent){
+		if(sorted.length == 0) return 0;
+		int rank = (int) Math.ceil(percent / 100 * sorted.length);
+		return sorted[Math.max(rank, 1) - 1] / 1e6;
+	}
+	
+}
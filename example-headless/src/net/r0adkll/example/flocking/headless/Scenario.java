@@ -0,0 +1,295 @@
+package net.r0adkll.example.flocking.headless;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.Random;
+
+import net.r0adkll.flocking.FlockEngine;
+import net.r0adkll.flocking.rules.BoundRule;
+import net.r0adkll.flocking.rules.WindRule;
+import net.r0adkll.flocking.utils.FRectangle;
+import net.r0adkll.flocking.utils.Vector2D;
+
+/**
+ * A headless run of the engine, read from a properties file. Every key has a
+ * default, see scenarios/default.properties for the full list.
+ * 
+ * @author r0adkll
+ *
+ */
+public class Scenario {
+
+	/**************************************************************************
+	 * Variables
+	 */
+	
+	// The flock
+	public int boids = 10000;
+	public String distribution = "uniform";
+	public long seed = 42;
+	
+	// The world
+	public float width = 2000;
+	public float height = 2000;
+	public boolean wrap = false;
+	
+	// The run
+	public int ticks = 1000;
+	public int warmup = 200;
+	public float elapsed = 1 / 60f;
+	
+	// The engine
+	public String index = "compact";
+	public int gridSize = 18;
+	public boolean arrays = true;
+	public int parallel = 0;
+	public boolean synchronous = false;
+	public int topological = 0;
+	public float neighbourSkin = 0;
+	public boolean symmetricPairs = false;
+	public boolean vectorKernel = false;
+	public boolean metrics = false;
+	
+	// The level of detail, a square focus region at the middle of the world
+	public int lodInterval = 0;
+	public float lodDistance = 100;
+	public int lodNeighbourCap = 8;
+	public float focusSize = 500;
+	
+	// The time budget of stepping the boids each tick, in milliseconds, 0 is off
+	public float budget = 0;
+	
+	// Reynold's Rules
+	public float alignment = 0.80f;
+	public float cohesion = 0.65f;
+	public float separation = 0.60f;
+	public float interactionRadius = 18;
+	public float separationRadius = 12;
+	public float innerSeparationRadius = 7;
+	public float speedLimit = 80;
+	
+	// Extra rules
+	public String rules = "";
+	
+	
+	/**************************************************************************
+	 * Loading Methods
+	 */
+	
+	/**
+	 * Load a scenario from a properties file
+	 * 
+	 * @param path			the path of the file
+	 * @param overrides		key=value pairs that take precedence over the file
+	 * @return				the scenario
+	 * @throws IOException	if the file can't be read
+	 */
+	public static Scenario load(String path, String[] overrides) throws IOException {
+		Properties props = new Properties();
+		InputStream in = new FileInputStream(path);
+		try{
+			props.load(in);
+		}finally{
+			in.close();
+		}
+		
+		for(String override: overrides){
+			int split = override.indexOf('=');
+			if(split < 0)
+				throw new IllegalArgumentException("Overrides look like key=value: " + override);
+			props.setProperty(override.substring(0, split).trim(), override.substring(split + 1).trim());
+		}
+		
+		Scenario scenario = new Scenario();
+		scenario.apply(props);
+		return scenario;
+	}
+	
+	/**
+	 * Read the keys of a set of properties, keeping the default of any that are missing
+	 * @param props		the properties to read
+	 */
+	public void apply(Properties props){
+		boids = getInt(props, "boids", boids);
+		distribution = props.getProperty("distribution", distribution).trim();
+		seed = getLong(props, "seed", seed);
+		
+		width = getFloat(props, "width", width);
+		height = getFloat(props, "height", height);
+		wrap = getBoolean(props, "wrap", wrap);
+		
+		ticks = getInt(props, "ticks", ticks);
+		warmup = getInt(props, "warmup", warmup);
+		elapsed = getFloat(props, "elapsed", elapsed);
+		
+		index = props.getProperty("index", index).trim();
+		gridSize = getInt(props, "gridSize", gridSize);
+		arrays = getBoolean(props, "arrays", arrays);
+		parallel = getInt(props, "parallel", parallel);
+		synchronous = getBoolean(props, "synchronous", synchronous);
+		topological = getInt(props, "topological", topological);
+		neighbourSkin = getFloat(props, "neighbourSkin", neighbourSkin);
+		symmetricPairs = getBoolean(props, "symmetricPairs", symmetricPairs);
+		vectorKernel = getBoolean(props, "vectorKernel", vectorKernel);
+		metrics = getBoolean(props, "metrics", metrics);
+		
+		lodInterval = getInt(props, "lodInterval", lodInterval);
+		lodDistance = getFloat(props, "lodDistance", lodDistance);
+		lodNeighbourCap = getInt(props, "lodNeighbourCap", lodNeighbourCap);
+		focusSize = getFloat(props, "focusSize", focusSize);
+		budget = getFloat(props, "budget", budget);
+		
+		alignment = getFloat(props, "alignment", alignment);
+		cohesion = getFloat(props, "cohesion", cohesion);
+		separation = getFloat(props, "separation", separation);
+		interactionRadius = getFloat(props, "interactionRadius", interactionRadius);
+		separationRadius = getFloat(props, "separationRadius", separationRadius);
+		innerSeparationRadius = getFloat(props, "innerSeparationRadius", innerSeparationRadius);
+		speedLimit = getFloat(props, "speedLimit", speedLimit);
+		
+		rules = props.getProperty("rules", rules).trim();
+	}
+	
+	
+	/**************************************************************************
+	 * Engine Methods
+	 */
+	
+	/**
+	 * Build the engine described by the scenario and fill it with its flock
+	 * @return		the engine
+	 */
+	public FlockEngine createEngine(){
+		FRectangle bounds = new FRectangle(0, 0, width, height);
+		
+		FlockEngine engine = new FlockEngine();
+		engine.setAlignment(alignment);
+		engine.setCohesion(cohesion);
+		engine.setSeparation(separation);
+		engine.setInteractionRadius(interactionRadius);
+		engine.setSeparationRadius(separationRadius);
+		engine.setInnerSeperationRadius(innerSeparationRadius);
+		engine.setSpeedLimit(speedLimit);
+		
+		if(arrays) engine.enableArrayStorage();
+		
+		// Keep the flock in the world, whatever the index
+		if(wrap) engine.enableWrap(bounds);
+		else engine.addRule(new BoundRule(bounds, 75));
+		
+		if("grid".equals(index)){
+			engine.enableGrid(gridSize, bounds);
+		}else if("compact".equals(index)){
+			engine.enableCompactGrid(gridSize, bounds);
+		}else if("hashed".equals(index)){
+			engine.enableHashedGrid(gridSize);
+		}else if("quadtree".equals(index)){
+			engine.enableQuadtree(bounds);
+		}else if("kdtree".equals(index)){
+			engine.enableKdTree();
+		}else if(!"brute".equals(index)){
+			throw new IllegalArgumentException("Unknown index: " + index);
+		}
+		
+		if(parallel > 0) engine.enableParallel(parallel);
+		if(synchronous) engine.enableSynchronousUpdate();
+		if(topological > 0) engine.enableTopological(topological);
+		if(neighbourSkin > 0) engine.enableNeighbourLists(neighbourSkin);
+		if(symmetricPairs) engine.enableSymmetricPairs();
+		if(vectorKernel && !engine.enableVectorKernel())
+			throw new IllegalStateException("The vector kernel isn't available, put r0adkll-flocking-vector on the classpath"
+					+ " and add --add-modules jdk.incubator.vector to the JVM options");
+		if(lodInterval > 0){
+			engine.enableLevelOfDetail(lodDistance, lodInterval, lodNeighbourCap);
+			engine.addFocusRegion(new FRectangle((width - focusSize) / 2, (height - focusSize) / 2, focusSize, focusSize));
+		}
+		if(budget > 0) engine.enableTimeBudget(budget);
+		
+		for(String rule: rules.split(",")){
+			rule = rule.trim();
+			if(rule.length() == 0 || "bound".equals(rule)) continue;
+			if("wind".equals(rule)){
+				engine.addRule(new WindRule(new Vector2D(2, 0)));
+			}else{
+				throw new IllegalArgumentException("Unknown rule: " + rule);
+			}
+		}
+		
+		addFlock(engine);
+		return engine;
+	}
+	
+	/**
+	 * Generate the flock, spread over the whole world or bunched up
+	 * into eight tight balls when the distribution is "clustered"
+	 * 
+	 * @param engine	the engine to add the flock to
+	 */
+	private void addFlock(FlockEngine engine){
+		Random random = new Random(seed);
+		boolean clustered = "clustered".equals(distribution);
+		
+		float[] centers = new float[16];
+		for(int i=0; i<centers.length; i+=2){
+			centers[i] = width * (0.1f + 0.8f * random.nextFloat());
+			centers[i + 1] = height * (0.1f + 0.8f * random.nextFloat());
+		}
+		float spread = Math.min(width, height) / 64;
+		
+		for(int i=0; i<boids; i++){
+			float x, y;
+			if(clustered){
+				int c = random.nextInt(8) * 2;
+				x = centers[c] + (float) random.nextGaussian() * spread;
+				y = centers[c + 1] + (float) random.nextGaussian() * spread;
+			}else{
+				x = random.nextFloat() * width;
+				y = random.nextFloat() * height;
+			}
+			
+			Vector2D vel = new Vector2D(random.nextFloat() * 40 - 20, random.nextFloat() * 40 - 20);
+			engine.addBoid(new HeadlessBoid(new Vector2D(x, y), vel));
+		}
+	}
+	
+	@Override
+	public String toString(){
+		return boids + " " + distribution + " boids in " + width + "x" + height + (wrap ? " (wrapped)" : "")
+				+ ", index=" + index + ", arrays=" + arrays + ", parallel=" + parallel
+				+ ", synchronous=" + synchronous + ", topological=" + topological
+				+ (neighbourSkin > 0 ? ", neighbourSkin=" + neighbourSkin : "")
+				+ (symmetricPairs ? ", symmetricPairs" : "")
+				+ (vectorKernel ? ", vectorKernel" : "")
+				+ (lodInterval > 0 ? ", lodInterval=" + lodInterval : "")
+				+ (budget > 0 ? ", budget=" + budget + "ms" : "")
+				+ (rules.length() > 0 ? ", rules=" + rules : "");
+	}
+	
+	
+	/**************************************************************************
+	 * Helper Methods
+	 */
+	
+	private static int getInt(Properties props, String key, int defaultValue){
+		String value = props.getProperty(key);
+		return value == null || value.trim().length() == 0 ? defaultValue : Integer.parseInt(value.trim());
+	}
+	
+	private static long getLong(Properties props, String key, long defaultValue){
+		String value = props.getProperty(key);
+		return value == null || value.trim().length() == 0 ? defaultValue : Long.parseLong(value.trim());
+	}
+	
+	private static float getFloat(Properties props, String key, float defaultValue){
+		String value = props.getProperty(key);
+		return value == null || value.trim().length() == 0 ? defaultValue : Float.parseFloat(value.trim());
+	}
+	
+	private static boolean getBoolean(Properties props, String key, boolean defaultValue){
+		String value = props.getProperty(key);
+		return value == null || value.trim().length() == 0 ? defaultValue : Boolean.parseBoolean(value.trim());
+	}
+	
+}
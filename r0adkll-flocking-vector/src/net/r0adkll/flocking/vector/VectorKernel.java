@@ -0,0 +1,115 @@
+package net.r0adkll.flocking.vector;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+import net.r0adkll.flocking.FlockData;
+import net.r0adkll.flocking.NeighbourKernel;
+
+/**
+ * A {@link NeighbourKernel} built on the incubating Vector API, it measures a
+ * boid against as many candidate neighbours at once as the CPU's vector registers
+ * have float lanes, 8 with AVX2 and 16 with AVX-512. The squared distances are
+ * compared against the radii into lane masks, and the masks pick the lanes that
+ * are added into the running sums, so there's no branching per candidate. The
+ * lanes are only added up into the boid's sums once the whole range is done.
+ *
+ * The candidates are loaded straight out of the columns of the flock storage,
+ * the engine only hands over whole vectors and sums up the rest itself.
+ *
+ * @author r0adkll
+ *
+ */
+public class VectorKernel implements NeighbourKernel {
+
+	/**************************************************************************
+	 * Constants
+	 */
+
+	// The widest vectors the CPU runs natively
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+
+
+	/**
+	 * A vector's worth of candidates at a time
+	 */
+	@Override
+	public int getBlockSize() {
+		return FLOATS.length();
+	}
+
+	@Override
+	public void accumulate(FlockData data, int from, int to, int self,
+			float radiusSq, float separationDistSq, float separationDistMinSq, float[] sums, int[] counts) {
+		float[] posX = data.posX, posY = data.posY;
+		float[] velX = data.velX, velY = data.velY;
+		float px = posX[self], py = posY[self];
+
+		FloatVector cohX = FloatVector.zero(FLOATS), cohY = FloatVector.zero(FLOATS);
+		FloatVector aliX = FloatVector.zero(FLOATS), aliY = FloatVector.zero(FLOATS);
+		FloatVector sepX = FloatVector.zero(FLOATS), sepY = FloatVector.zero(FLOATS);
+		int cohCount = 0, sepCount = 0, closeCount = 0;
+
+		int length = FLOATS.length();
+
+		for(int i=from; i<to; i+=length){
+			FloatVector ox = FloatVector.fromArray(FLOATS, posX, i);
+			FloatVector oy = FloatVector.fromArray(FLOATS, posY, i);
+
+			FloatVector dx = ox.neg().add(px);
+			FloatVector dy = oy.neg().add(py);
+			FloatVector distSq = dx.mul(dx).add(dy.mul(dy));
+
+			// Main Distance Check
+			VectorMask<Float> near = distSq.compare(VectorOperators.LT, radiusSq);
+			if(!near.anyTrue()) continue;
+
+			FloatVector vx = FloatVector.fromArray(FLOATS, velX, i);
+			FloatVector vy = FloatVector.fromArray(FLOATS, velY, i);
+			cohX = cohX.add(ox, near);
+			cohY = cohY.add(oy, near);
+			aliX = aliX.add(vx, near);
+			aliY = aliY.add(vy, near);
+			cohCount += near.trueCount();
+
+			VectorMask<Float> separate = distSq.compare(VectorOperators.LT, separationDistSq).and(near);
+			sepX = sepX.add(ox, separate);
+			sepY = sepY.add(oy, separate);
+			sepCount += separate.trueCount();
+
+			// avoid being too close to any particular bird
+			closeCount += distSq.compare(VectorOperators.LT, separationDistMinSq).and(separate).trueCount();
+		}
+
+		float cx = cohX.reduceLanes(VectorOperators.ADD), cy = cohY.reduceLanes(VectorOperators.ADD);
+		float vx = aliX.reduceLanes(VectorOperators.ADD), vy = aliY.reduceLanes(VectorOperators.ADD);
+		float sx = sepX.reduceLanes(VectorOperators.ADD), sy = sepY.reduceLanes(VectorOperators.ADD);
+
+		// The boid itself was measured along with its neighbours, and it's
+		// within every distance of itself, so take it back out
+		if(self >= from && self < to){
+			if(0 < radiusSq){
+				cx -= px; cy -= py;
+				vx -= velX[self]; vy -= velY[self];
+				cohCount--;
+				if(0 < separationDistSq){
+					sx -= px; sy -= py;
+					sepCount--;
+					if(0 < separationDistMinSq) closeCount--;
+				}
+			}
+		}
+
+		// Add the lanes up into the sums
+		sums[0] += cx;
+		sums[1] += cy;
+		sums[2] += vx;
+		sums[3] += vy;
+		sums[4] += sx + px * 10 * closeCount;
+		sums[5] += sy + py * 10 * closeCount;
+		counts[0] += cohCount;
+		counts[1] += sepCount + closeCount * 10;
+	}
+
+}
@@ -0,0 +1,325 @@
+package net.r0adkll.flocking;
+
+import java.util.concurrent.ForkJoinPool;
+
+import net.r0adkll.flocking.utils.MathUtils;
+
+/**
+ * This is the base class of the uniform grids that the engine can
+ * use to find nearby boids. It owns the cell geometry and the neighbour
+ * query, the implementations only decide how the boid slots of each
+ * cell are stored. A grid is either bounded, with cells 0 to cell_width/
+ * cell_height along each axis, or unbounded.
+ *
+ * Uniform grids work best when the flock is spread out evenly, see the
+ * {@link Quadtree} and {@link KdTree} for flocks that bunch up.
+ *
+ * @author r0adkll
+ *
+ */
+public abstract class AbstractGrid implements SpatialIndex {
+
+	public int cellSize;
+
+	public int cell_width = 0;
+	public int cell_height = 0;
+
+	// The range of cell coordinates that can hold boids
+	int minCellX = Integer.MIN_VALUE;
+	int minCellY = Integer.MIN_VALUE;
+	int maxCellX = Integer.MAX_VALUE;
+	int maxCellY = Integer.MAX_VALUE;
+
+	// The size of the world when it wraps around, zero when it doesn't
+	float wrapWidth = 0;
+	float wrapHeight = 0;
+
+	// The radius that queries without one of their own search,
+	// the engine keeps this in step with its interaction radius
+	public float searchRadius;
+
+	/**
+	 * Unbounded Constructor
+	 *
+	 * @param cellSize		the size of the grid cells
+	 */
+	AbstractGrid (int cellSize) {
+		this.cellSize = cellSize;
+		this.searchRadius = cellSize;
+	}
+
+	/**
+	 * Bounded Constructor
+	 *
+	 * @param cellSize		the size of the grid cells
+	 * @param width			the width of the bounds
+	 * @param height		the height of the bounds
+	 */
+	AbstractGrid (int cellSize, int width, int height) {
+		this(cellSize);
+		this.cell_width = (width/cellSize)+1;
+		this.cell_height = (height/cellSize)+1;
+		this.minCellX = 0;
+		this.minCellY = 0;
+		this.maxCellX = cell_width - 1;
+		this.maxCellY = cell_height - 1;
+	}
+
+	/**
+	 * Set the radius that queries without one of their own search
+	 * @param radius	the search radius
+	 */
+	public void setSearchRadius(float radius){
+		searchRadius = radius;
+	}
+
+	/**
+	 * Make the world wrap around like a torus, queries near an edge then also
+	 * find the boids near the opposite edge. The world starts at the origin of
+	 * the grid and the positions of the boids must be wrapped into it.
+	 *
+	 * @param width		the width of the world, no larger than the grid
+	 * @param height	the height of the world, no larger than the grid
+	 */
+	public void setWrap(float width, float height){
+		if(cell_width == 0)
+			throw new IllegalStateException("An unbounded grid can't wrap around");
+		if(width > cell_width * cellSize || height > cell_height * cellSize)
+			throw new IllegalArgumentException("The wrapped world is larger than the grid");
+
+		wrapWidth = width;
+		wrapHeight = height;
+	}
+
+	/**
+	 * Grids kept up to date boid by boid have nothing to prepare
+	 */
+	@Override
+	public void prepare(FlockData data, ForkJoinPool pool){
+	}
+
+	/**
+	 * Visit the slots of the boids within the search radius
+	 * @see #forEachNearby(float, float, float, NeighbourVisitor)
+	 */
+	public void forEachNearby (float x, float y, NeighbourVisitor visitor) {
+		forEachNearby(x, y, searchRadius, visitor);
+	}
+
+	/**
+	 * Visit the slots of the nearby boids
+	 * goes through every cell that overlaps the square around the query position,
+	 * skipping those whose bounds are farther away than the radius, and hands the
+	 * slots contained in the rest to the visitor in place. Any boid closer than the
+	 * radius is visited, whatever the radius is compared to the cell size.
+	 *
+	 * Nothing is allocated or copied and the grid isn't modified, so any number
+	 * of threads can query the grid at once as long as it isn't being updated.
+	 *
+	 * @param x			the x position to query around
+	 * @param y			the y position to query around
+	 * @param radius	the radius to query
+	 * @param visitor	the visitor to hand the nearby slots to
+	 */
+	public void forEachNearby (float x, float y, float radius, NeighbourVisitor visitor) {
+		visitCells(x - radius, y - radius, x + radius, y + radius, x, y, radius * radius, visitor);
+	}
+
+	/**
+	 * Visit the slots of the boids in every cell that overlaps a rectangle
+	 * @see SpatialIndex#forEachInRect(float, float, float, float, NeighbourVisitor)
+	 */
+	public void forEachInRect (float x, float y, float width, float height, NeighbourVisitor visitor) {
+		visitCells(x, y, x + width, y + height, 0, 0, -1, visitor);
+	}
+
+	/**
+	 * A bounded grid only tracks the boids within its cells, the boids of a
+	 * wrapped world are always moved back into them
+	 * @see SpatialIndex#covers(float, float, float, float)
+	 */
+	public boolean covers (float x, float y, float width, float height) {
+		if (wrapWidth > 0) return true;
+		return cellCoord(x) >= minCellX && cellCoord(x + width) <= maxCellX
+				&& cellCoord(y) >= minCellY && cellCoord(y + height) <= maxCellY;
+	}
+
+	/**
+	 * Visit the cells overlapping an area, skipping those farther away from
+	 * the query position than the radius
+	 *
+	 * @param radiusSq	the squared query radius, or -1 to visit every cell
+	 */
+	private void visitCells (float left, float top, float right, float bottom,
+			float x, float y, float radiusSq, NeighbourVisitor visitor) {
+		if (wrapWidth > 0) {
+			visitCellsWrapped(left, top, right, bottom, x, y, radiusSq, visitor);
+			return;
+		}
+
+		int minX = Math.max(cellCoord(left), minCellX);
+		int maxX = Math.min(cellCoord(right), maxCellX);
+		int minY = Math.max(cellCoord(top), minCellY);
+		int maxY = Math.min(cellCoord(bottom), maxCellY);
+		visitCellRange(minX, maxX, minY, maxY, x, y, radiusSq, visitor);
+	}
+
+	/**
+	 * Visit a range of cells, skipping those farther away from the query
+	 * position than the radius
+	 *
+	 * @param radiusSq	the squared query radius, or -1 to visit every cell
+	 */
+	void visitCellRange (int minX, int maxX, int minY, int maxY,
+			float x, float y, float radiusSq, NeighbourVisitor visitor) {
+		boolean cull = radiusSq >= 0;
+
+		for (int cx = minX; cx <= maxX; cx++) {
+			float dx = axisDistance(x, cx);
+			float dxSq = dx * dx;
+			for (int cy = minY; cy <= maxY; cy++) {
+				// cull the cell if its closest point is out of range
+				if (cull) {
+					float dy = axisDistance(y, cy);
+					if (dxSq + dy * dy >= radiusSq) continue;
+				}
+
+				visitCell(cx, cy, visitor);
+			}
+		}
+	}
+
+	/**
+	 * Check if the closest point of a cell is within the radius of a position
+	 *
+	 * @param radiusSq	the squared query radius, or -1 for any cell
+	 */
+	boolean cellInRange (int cellX, int cellY, float x, float y, float radiusSq) {
+		if (radiusSq < 0) return true;
+		float dx = axisDistance(x, cellX);
+		float dy = axisDistance(y, cellY);
+		return dx * dx + dy * dy < radiusSq;
+	}
+
+	/**
+	 * Visit the cells overlapping an area of a wrapped world. The area is moved
+	 * to start inside the world, then along each axis it covers a range of cells
+	 * and, when it reaches over the far edge, a second range from the near edge.
+	 * The second range is trimmed so that no cell is visited twice, even when the
+	 * world is only a few cells across or its last cell is cut short by the edge.
+	 */
+	private void visitCellsWrapped (float left, float top, float right, float bottom,
+			float x, float y, float radiusSq, NeighbourVisitor visitor) {
+		float w = wrapWidth, h = wrapHeight;
+		float shiftX = MathUtils.wrap(left, 0, w) - left;
+		float shiftY = MathUtils.wrap(top, 0, h) - top;
+		left += shiftX;
+		right += shiftX;
+		top += shiftY;
+		bottom += shiftY;
+		x = MathUtils.wrap(x, 0, w);
+		y = MathUtils.wrap(y, 0, h);
+
+		// the last cells that reach into the world
+		int lastX = (int)Math.ceil(w / cellSize) - 1;
+		int lastY = (int)Math.ceil(h / cellSize) - 1;
+		boolean cull = radiusSq >= 0;
+
+		// The main and the wrapped range of cells along x
+		int minX = 0, maxX = lastX, wrapMaxX = -1;
+		if (right - left < w) {
+			minX = cellCoord(left);
+			maxX = Math.min(cellCoord(right), lastX);
+			if (right >= w) wrapMaxX = Math.min(cellCoord(right - w), minX - 1);
+		}
+
+		// The main and the wrapped range of cells along y
+		int minY = 0, maxY = lastY, wrapMaxY = -1;
+		if (bottom - top < h) {
+			minY = cellCoord(top);
+			maxY = Math.min(cellCoord(bottom), lastY);
+			if (bottom >= h) wrapMaxY = Math.min(cellCoord(bottom - h), minY - 1);
+		}
+
+		for (int rx = 0; rx < 2; rx++) {
+			int fromX = rx == 0 ? minX : 0;
+			int toX = rx == 0 ? maxX : wrapMaxX;
+			for (int cx = fromX; cx <= toX; cx++) {
+				float dx = wrappedAxisDistance(x, cx, w);
+				float dxSq = dx * dx;
+				for (int ry = 0; ry < 2; ry++) {
+					int fromY = ry == 0 ? minY : 0;
+					int toY = ry == 0 ? maxY : wrapMaxY;
+					for (int cy = fromY; cy <= toY; cy++) {
+						// cull the cell if its closest image is out of range
+						if (cull) {
+							float dy = wrappedAxisDistance(y, cy, h);
+							if (dxSq + dy * dy >= radiusSq) continue;
+						}
+
+						visitCell(cx, cy, visitor);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Hand the slots of every boid in a cell to a visitor, empty
+	 * cells needn't be visited
+	 *
+	 * @param cellX		the x coordinate of the cell
+	 * @param cellY		the y coordinate of the cell
+	 * @param visitor	the visitor to hand the slots to
+	 */
+	protected abstract void visitCell(int cellX, int cellY, NeighbourVisitor visitor);
+
+	/**
+	 * Get the cell of a bounded grid containing a position
+	 * @return		the cell index, cellX * cell_height + cellY, or -1 if the
+	 * 				position is outside of the grid
+	 */
+	int cellOf(float x, float y){
+		int cellX = cellCoord(x);
+		int cellY = cellCoord(y);
+
+		// safety check
+		if (cellX < 0 || cellX >= cell_width || cellY < 0 || cellY >= cell_height)
+			return -1;
+		return cellX * cell_height + cellY;
+	}
+
+	/**
+	 * Get the cell coordinate of a position along one axis
+	 */
+	int cellCoord(float v){
+		float f = v / cellSize;
+		int c = (int)f;
+		return f < c ? c - 1 : c;
+	}
+
+	/**
+	 * Get the distance along one axis from a position to the closest edge
+	 * of a cell, zero when the position is within the cell's span
+	 */
+	private float axisDistance(float v, int cell){
+		float min = (float)cell * cellSize;
+		if (v < min) return min - v;
+		float max = min + cellSize;
+		if (v > max) return v - max;
+		return 0;
+	}
+
+	/**
+	 * Get the distance along one axis from a position to the closest edge
+	 * of a cell in a world that wraps every size units
+	 */
+	private float wrappedAxisDistance(float v, int cell, float size){
+		float min = (float)cell * cellSize;
+		float max = Math.min(min + cellSize, size);
+		if (v < min) return Math.min(min - v, v + size - max);
+		if (v > max) return Math.min(v - max, min + size - v);
+		return 0;
+	}
+
+}
@@ -0,0 +1,300 @@
+package net.r0adkll.flocking;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A uniform grid that is rebuilt from scratch every tick instead of
+ * being kept up to date boid by boid. The boid slots are counting sorted
+ * by cell into one flat array, with the slots of cell c stored between
+ * cellStart[c] and cellStart[c+1] (compressed sparse row layout), so a
+ * neighbour scan is a walk over contiguous memory and the cost of a
+ * rebuild doesn't depend on how many boids changed cells.
+ *
+ * On large flocks the cell assignment, histogram, prefix sum and scatter
+ * steps are split across the engine's fork/join pool.
+ *
+ * @author r0adkll
+ *
+ */
+public class CompactGrid extends AbstractGrid {
+
+	/**************************************************************************
+	 * Constants
+	 */
+
+	// Flocks smaller than this are rebuilt on the calling thread
+	private static final int parallelThreshold = 4096;
+
+	// The number of cells each task of the parallel prefix sum covers
+	private static final int cellsPerBlock = 4096;
+
+
+	/**************************************************************************
+	 * Variables
+	 */
+
+	int[] cellStart;	// cellStart[cell] = the first index into cellSlots of the cell, cellStart[cells] = the tracked boid count
+	int[] cellSlots;	// the slots of every tracked boid, sorted by cell
+
+	int[] slotCell;		// slotCell[slot] = the cell the boid is in, or -1 if it's outside the grid
+
+	// The per chunk cell histograms, which the prefix sum turns into per chunk write offsets
+	int[][] chunkCounts;
+
+	// The per block totals of the prefix sum
+	int[] blockTotals;
+
+	// The state of the rebuild in progress
+	private FlockData data;
+	private int chunks;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param cellSize		the size of the grid cells
+	 * @param width			the width of the bounds
+	 * @param height		the height of the bounds
+	 */
+	CompactGrid (int cellSize, int width, int height) {
+		super(cellSize, width, height);
+
+		int cells = cell_width * cell_height;
+		cellStart = new int[cells + 1];
+		cellSlots = new int[64];
+		slotCell = new int[64];
+		chunkCounts = new int[0][];
+		blockTotals = new int[(cells + cellsPerBlock - 1) / cellsPerBlock];
+	}
+
+	/**
+	 * Rebuild the grid from the current positions of the flock
+	 *
+	 * @param data		the flock storage to index
+	 * @param pool		the pool to split the rebuild across, or null to
+	 * 					rebuild on the calling thread
+	 */
+	public void rebuild(FlockData data, ForkJoinPool pool){
+		int size = data.size;
+		if(cellSlots.length < size){
+			cellSlots = new int[Math.max(size, cellSlots.length * 2)];
+			slotCell = new int[cellSlots.length];
+		}
+
+		boolean parallel = pool != null && size >= parallelThreshold;
+		int chunkCount = parallel ? pool.getParallelism() : 1;
+		if(chunkCounts.length != chunkCount){
+			chunkCounts = new int[chunkCount][cell_width * cell_height];
+		}
+
+		this.data = data;
+		this.chunks = chunkCount;
+
+		if(parallel){
+			// 1) assign cells and count them per chunk
+			pool.invoke(new RebuildTask(COUNT, 0, chunkCount));
+
+			// 2) prefix sum the counts, a block of cells at a time
+			pool.invoke(new RebuildTask(SUM_BLOCKS, 0, blockTotals.length));
+			scanBlocks();
+			pool.invoke(new RebuildTask(OFFSETS, 0, blockTotals.length));
+
+			// 3) scatter the slots into their cells
+			pool.invoke(new RebuildTask(SCATTER, 0, chunkCount));
+		}else{
+			count(0);
+			for(int b=0; b<blockTotals.length; b++){
+				sumBlock(b);
+			}
+			scanBlocks();
+			for(int b=0; b<blockTotals.length; b++){
+				offsets(b);
+			}
+			scatter(0);
+		}
+
+		this.data = null;
+	}
+
+	/**
+	 * Rebuild the grid at the start of every update
+	 */
+	@Override
+	public void prepare(FlockData data, ForkJoinPool pool) {
+		rebuild(data, pool);
+	}
+
+	/**
+	 * The boids are picked up by the next rebuild,
+	 * the grid isn't kept up to date boid by boid
+	 */
+	@Override
+	public void addBoid(int slot, float x, float y) {
+	}
+
+	@Override
+	public void removeBoid(int slot) {
+	}
+
+	@Override
+	public void moveSlot(int from, int to) {
+	}
+
+	@Override
+	public void update(int slot, float x, float y) {
+	}
+
+	@Override
+	protected void visitCell(int cellX, int cellY, NeighbourVisitor visitor) {
+		int cell = cellX * cell_height + cellY;
+		int start = cellStart[cell];
+		int end = cellStart[cell + 1];
+		if (end > start) visitor.visit(cellSlots, start, end);
+	}
+
+
+	/**************************************************************************
+	 * Rebuild Steps
+	 */
+
+	/**
+	 * Assign every slot in a chunk to its cell and count the cells
+	 * @param chunk		the chunk of slots
+	 */
+	private void count(int chunk){
+		int[] counts = chunkCounts[chunk];
+		Arrays.fill(counts, 0);
+
+		float[] posX = data.posX;
+		float[] posY = data.posY;
+		int from = chunkStart(chunk);
+		int to = chunkStart(chunk + 1);
+		for(int i=from; i<to; i++){
+			int cell = cellOf(posX[i], posY[i]);
+			slotCell[i] = cell;
+			if(cell >= 0) counts[cell]++;
+		}
+	}
+
+	/**
+	 * Total the counts of a block of cells across every chunk
+	 * @param block		the block of cells
+	 */
+	private void sumBlock(int block){
+		int from = block * cellsPerBlock;
+		int to = Math.min(from + cellsPerBlock, cellStart.length - 1);
+		int total = 0;
+		for(int k=0; k<chunks; k++){
+			int[] counts = chunkCounts[k];
+			for(int c=from; c<to; c++){
+				total += counts[c];
+			}
+		}
+		blockTotals[block] = total;
+	}
+
+	/**
+	 * Exclusive scan of the block totals, there are few enough blocks
+	 * that this is done on the calling thread
+	 */
+	private void scanBlocks(){
+		int running = 0;
+		for(int b=0; b<blockTotals.length; b++){
+			int total = blockTotals[b];
+			blockTotals[b] = running;
+			running += total;
+		}
+		cellStart[cellStart.length - 1] = running;
+	}
+
+	/**
+	 * Turn the counts of a block of cells into the cell starts and the
+	 * offsets that each chunk writes its slots of that cell to
+	 * @param block		the block of cells
+	 */
+	private void offsets(int block){
+		int from = block * cellsPerBlock;
+		int to = Math.min(from + cellsPerBlock, cellStart.length - 1);
+		int running = blockTotals[block];
+		for(int c=from; c<to; c++){
+			cellStart[c] = running;
+			for(int k=0; k<chunks; k++){
+				int[] counts = chunkCounts[k];
+				int count = counts[c];
+				counts[c] = running;
+				running += count;
+			}
+		}
+	}
+
+	/**
+	 * Write the slots of a chunk into their cells, chunks own disjoint
+	 * ranges of every cell so the slots stay ordered within a cell
+	 * @param chunk		the chunk of slots
+	 */
+	private void scatter(int chunk){
+		int[] offsets = chunkCounts[chunk];
+		int from = chunkStart(chunk);
+		int to = chunkStart(chunk + 1);
+		for(int i=from; i<to; i++){
+			int cell = slotCell[i];
+			if(cell >= 0) cellSlots[offsets[cell]++] = i;
+		}
+	}
+
+	/**
+	 * Get the first slot of a chunk
+	 */
+	private int chunkStart(int chunk){
+		return (int)((long)data.size * chunk / chunks);
+	}
+
+
+	/**************************************************************************
+	 * Parallel Rebuild
+	 */
+
+	private static final int COUNT = 0;
+	private static final int SUM_BLOCKS = 1;
+	private static final int OFFSETS = 2;
+	private static final int SCATTER = 3;
+
+	/**
+	 * The fork/join task of the parallel rebuild, it splits a range of
+	 * chunks or cell blocks in half until it reaches a single one to run
+	 * the rebuild step on
+	 */
+	private class RebuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int step;
+		private final int from;
+		private final int to;
+
+		RebuildTask(int step, int from, int to){
+			this.step = step;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > 1){
+				int mid = (from + to) >>> 1;
+				invokeAll(new RebuildTask(step, from, mid), new RebuildTask(step, mid, to));
+				return;
+			}
+			if(to == from) return;
+
+			switch(step){
+				case COUNT:			count(from); break;
+				case SUM_BLOCKS:	sumBlock(from); break;
+				case OFFSETS:		offsets(from); break;
+				case SCATTER:		scatter(from); break;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,247 @@
+package net.r0adkll.flocking;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import net.r0adkll.flocking.utils.FRectangle;
+import net.r0adkll.flocking.utils.Vector2D;
+
+/**
+ * Structure-of-arrays storage for the flock. Every boid is given a
+ * slot index into the primitive columns below so the engine's inner
+ * loops walk plain float arrays instead of chasing Flockable and
+ * Vector2D references around the heap.
+ *
+ * The Flockable objects are only touched at the tick boundary,
+ * {@link #pull()} copies them into the columns and {@link #push()}
+ * writes the simulated state back out.
+ *
+ * Slots are kept dense, removing a boid moves the last slot into
+ * the hole that it leaves behind.
+ *
+ * The columns are double buffered, a synchronous update reads every
+ * neighbour out of the current columns, writes the next tick into
+ * the next columns and then {@link #swap()}s them.
+ *
+ * @author r0adkll
+ *
+ */
+public class FlockData {
+
+	/**************************************************************************
+	 * Constants
+	 */
+
+	private static final int DEFAULT_CAPACITY = 64;
+
+
+	/**************************************************************************
+	 * Variables
+	 */
+
+	// The number of occupied slots
+	public int size = 0;
+
+	// The boid that owns each slot
+	public Flockable[] boids;
+
+	// The primitive state columns, indexed by slot
+	public float[] posX;
+	public float[] posY;
+	public float[] velX;
+	public float[] velY;
+
+	// The boid rotation in degrees, NaN until the alignment rule has set it
+	public float[] rotation;
+
+	// The columns that a synchronous update writes the next tick into
+	public float[] nextPosX;
+	public float[] nextPosY;
+	public float[] nextVelX;
+	public float[] nextVelY;
+	public float[] nextRotation;
+
+	// Lookup from boid to its current slot
+	private Map<Flockable, Integer> slots = new IdentityHashMap<Flockable, Integer>();
+
+
+	/**
+	 * Constructor
+	 */
+	public FlockData(){
+		allocate(DEFAULT_CAPACITY);
+	}
+
+
+	/**************************************************************************
+	 * Container Methods
+	 */
+
+	/**
+	 * Add a boid and copy its current state into a new slot
+	 *
+	 * @param boid		the boid to add
+	 * @return			the slot the boid was stored in
+	 */
+	public int add(Flockable boid){
+		Integer existing = slots.get(boid);
+		if(existing != null) return existing;
+
+		if(size == boids.length) allocate(boids.length * 2);
+
+		int slot = size++;
+		boids[slot] = boid;
+		slots.put(boid, slot);
+		rotation[slot] = Float.NaN;
+		pull(slot);
+		return slot;
+	}
+
+	/**
+	 * Remove a boid, the last slot is moved into the freed slot
+	 * so that the columns stay dense
+	 *
+	 * @param boid		the boid to remove
+	 * @return			the slot that was freed, or -1 if the boid wasn't stored.
+	 * 					If this isn't the last slot, the boid that was in slot
+	 * 					{@link #size} now lives here.
+	 */
+	public int remove(Flockable boid){
+		Integer removed = slots.remove(boid);
+		if(removed == null) return -1;
+
+		int slot = removed;
+		int last = --size;
+		if(slot != last){
+			boids[slot] = boids[last];
+			posX[slot] = posX[last];
+			posY[slot] = posY[last];
+			velX[slot] = velX[last];
+			velY[slot] = velY[last];
+			rotation[slot] = rotation[last];
+			slots.put(boids[slot], slot);
+		}
+		boids[last] = null;
+		return slot;
+	}
+
+	/**
+	 * Get the slot of a boid
+	 *
+	 * @param boid		the boid to look up
+	 * @return			the slot index, or -1 if it isn't stored
+	 */
+	public int indexOf(Flockable boid){
+		Integer slot = slots.get(boid);
+		return slot == null ? -1 : slot;
+	}
+
+
+	/**************************************************************************
+	 * Synchronization Methods
+	 */
+
+	/**
+	 * Copy the state of every Flockable into the columns
+	 */
+	public void pull(){
+		for(int i=0; i<size; i++){
+			pull(i);
+		}
+	}
+
+	/**
+	 * Copy the state of a single slot's Flockable into the columns
+	 * @param slot		the slot to copy
+	 */
+	public void pull(int slot){
+		Flockable boid = boids[slot];
+		Vector2D pos = boid.getPosition();
+		Vector2D vel = boid.getVelocity();
+		posX[slot] = pos.x;
+		posY[slot] = pos.y;
+		velX[slot] = vel.x;
+		velY[slot] = vel.y;
+	}
+
+	/**
+	 * Write the columns back out to every Flockable
+	 */
+	public void push(){
+		for(int i=0; i<size; i++){
+			Flockable boid = boids[i];
+			boid.getPosition().set(posX[i], posY[i]);
+			boid.getVelocity().set(velX[i], velY[i]);
+
+			// Only hand over a rotation once one has been computed
+			float rot = rotation[i];
+			if(rot == rot) boid.setRotation(rot);
+
+			FRectangle bounds = boid.getBounds();
+			bounds.setX(posX[i]);
+			bounds.setY(posY[i]);
+		}
+	}
+
+	/**
+	 * Swap the current and next columns, the state written into the
+	 * next columns becomes the current state of the flock
+	 */
+	public void swap(){
+		float[] tmp = posX; posX = nextPosX; nextPosX = tmp;
+		tmp = posY; posY = nextPosY; nextPosY = tmp;
+		tmp = velX; velX = nextVelX; nextVelX = tmp;
+		tmp = velY; velY = nextVelY; nextVelY = tmp;
+		tmp = rotation; rotation = nextRotation; nextRotation = tmp;
+	}
+
+	/**
+	 * Carry the current state of a slot over into the next columns
+	 * unchanged, for a boid that isn't being stepped this tick
+	 *
+	 * @param slot		the slot to hold
+	 */
+	public void hold(int slot){
+		nextPosX[slot] = posX[slot];
+		nextPosY[slot] = posY[slot];
+		nextVelX[slot] = velX[slot];
+		nextVelY[slot] = velY[slot];
+		nextRotation[slot] = rotation[slot];
+	}
+
+
+	/**************************************************************************
+	 * Helper Methods
+	 */
+
+	/**
+	 * Grow the columns to the given capacity
+	 * @param capacity		the new slot capacity
+	 */
+	private void allocate(int capacity){
+		boids = grow(boids, capacity);
+		posX = grow(posX, capacity);
+		posY = grow(posY, capacity);
+		velX = grow(velX, capacity);
+		velY = grow(velY, capacity);
+		rotation = grow(rotation, capacity);
+		nextPosX = grow(nextPosX, capacity);
+		nextPosY = grow(nextPosY, capacity);
+		nextVelX = grow(nextVelX, capacity);
+		nextVelY = grow(nextVelY, capacity);
+		nextRotation = grow(nextRotation, capacity);
+	}
+
+	private float[] grow(float[] array, int capacity){
+		float[] result = new float[capacity];
+		if(array != null) System.arraycopy(array, 0, result, 0, size);
+		return result;
+	}
+
+	private Flockable[] grow(Flockable[] array, int capacity){
+		Flockable[] result = new Flockable[capacity];
+		if(array != null) System.arraycopy(array, 0, result, 0, size);
+		return result;
+	}
+
+}
@@ -1,10 +1,14 @@
 package net.r0adkll.flocking;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
-import net.r0adkll.flocking.rules.AbstractRule;
+import net.r0adkll.flocking.rules.BatchRule;
 import net.r0adkll.flocking.rules.BoundRule;
+import net.r0adkll.flocking.rules.CulledRule;
 import net.r0adkll.flocking.utils.FRectangle;
 import net.r0adkll.flocking.utils.MathUtils;
 import net.r0adkll.flocking.utils.Vector2D;
@@ -41,6 +45,23 @@ public class FlockEngine{
 	private static final float separationMin = 0.25f;
 	private static final float separationMax = 7f; 
 	
+	/* Parallel Update Constants */
+	// The number of chunks handed to each worker, more chunks balance better
+	private static final int chunksPerWorker = 4;
+	
+	// Flocks smaller than this aren't worth splitting across workers
+	private static final int parallelThreshold = 1024;
+	
+	/* Topological Mode Constants */
+	// How much farther than the last k nearest neighbours the search starts
+	private static final float nearestSlack = 1.1f;
+	
+	// How much the search radius grows when too few neighbours were found
+	private static final float nearestGrowth = 1.5f;
+	
+	// The most times the search radius is grown before making do
+	private static final int nearestPasses = 48;
+	
 	
 	
 
@@ -67,14 +88,42 @@ public class FlockEngine{
 	float separation = separationMax;
 	float separationDistSq = separationDistMaxSq;
 		
-	// Grid Optimization Flag
-	boolean isGridEnabled = false;
+	// Array Storage Flag
+	boolean isArrayStorageEnabled = false;
+	
+	// Parallel Update Flag
+	boolean isParallelEnabled = false;
+	
+	// Synchronous Update Flag
+	boolean isSynchronousEnabled = false;
+	
+	// Wrap Around Flag
+	boolean isWrapEnabled = false;
+	
+	// The number of nearest neighbours each boid flocks with in the
+	// topological mode, zero to flock with every boid in the radius
+	int topologicalK = 0;
+	
+	// The level of detail mode, boids further than lodDistance from every focus
+	// region are only stepped once every lodInterval updates, with at most
+	// lodNeighbourCap neighbours, zero interval to step every boid every update
+	int lodInterval = 0;
+	float lodDistance;
+	int lodNeighbourCap;
+	
+	// The time the amortised update may spend stepping boids each update, in
+	// nanoseconds, zero to step the whole flock every update
+	long budgetNanos = 0;
+	
+	// The world that boids wrap around in
+	float wrapX, wrapY, wrapWidth, wrapHeight;
 	
 	/*
-	 * The Grid Optimization object to improve the performance
-	 * of the algorithm
+	 * The Spatial Index used to find the neighbours of a boid
+	 * to improve the performance of the algorithm, or null to
+	 * go through the whole flock
 	 */
-	FlockGrid _boidgrid;
+	SpatialIndex _index;
 	
 	/*
 	 * The list of currently tracked birds being controlled
@@ -82,11 +131,97 @@ public class FlockEngine{
 	 */
 	List<Flockable> _boidflock;	
 	
+	/*
+	 * The structure-of-arrays copy of the flock that is
+	 * simulated when array storage is enabled
+	 */
+	FlockData _boiddata;
+	
+	/*
+	 * The pool that the parallel update is split across and
+	 * the scratch state owned by each of its chunks
+	 */
+	ForkJoinPool _pool;
+	FlockScratch[] _chunkscratch;
+	
+	/*
+	 * The scratch state used by the single threaded update
+	 */
+	FlockScratch _scratch = new FlockScratch();
+	
+	/*
+	 * The radius each boid slot last found its nearest neighbours
+	 * in, where the next search for them starts
+	 */
+	float[] _nearestradius = new float[0];
+	
+	/*
+	 * The regions of interest of the level of detail mode, the time each
+	 * boid slot has gone without being stepped along with the acceleration
+	 * the rules gave it meanwhile, and the number of updates so far, which
+	 * staggers the far boids across the updates
+	 */
+	List<FRectangle> _focusregions;
+	float[] _lodelapsed = new float[0];
+	float[] _lodaccX = new float[0];
+	float[] _lodaccY = new float[0];
+	int _lodtick = 0;
+	
+	/*
+	 * The slot the amortised update carries on stepping from
+	 */
+	int _slicecursor = 0;
+	
+	/*
+	 * The cached neighbours of every boid slot, or null to
+	 * find them through the spatial index on every update
+	 */
+	NeighbourLists _neighbourlists;
+	
+	/*
+	 * The neighbour sums of every boid slot, added up a pair of
+	 * boids at a time, or null to sum them up a boid at a time
+	 */
+	SymmetricPairs _symmetricpairs;
+	
+	/*
+	 * The kernel summing up the ranges of slots,
+	 * or null to sum them up in the scratch state
+	 */
+	NeighbourKernel _kernel;
+	
 	/*
 	 * The list of flocking rules to be applied by
 	 * the algorithm
 	 */
-	List<AbstractRule> _rules;
+	List<BatchRule> _rules;
+	
+	/*
+	 * The acceleration the rules gave each boid slot this update
+	 */
+	float[] _ruleaccX = new float[0];
+	float[] _ruleaccY = new float[0];
+	
+	/*
+	 * The region each rule affects this update, null for the rules
+	 * that are applied to the whole flock
+	 */
+	FRectangle[] _ruleinfluence = new FRectangle[0];
+	RuleVisitor _rulevisitor = new RuleVisitor();
+	
+	/*
+	 * The position of each boid slot before the rules were
+	 * applied, to find the boids the rules moved
+	 */
+	float[] _ruleposX = new float[0];
+	float[] _ruleposY = new float[0];
+	
+	/*
+	 * The listener handed the metrics of every update, or null
+	 * to skip timing the update altogether
+	 */
+	FlockMetricsListener _metricslistener;
+	FlockMetrics _metrics = new FlockMetrics();
 	
 	
 	/**
@@ -94,7 +229,9 @@ public class FlockEngine{
 	 */
 	public FlockEngine(){
 		_boidflock = new ArrayList<Flockable>();
-		_rules = new ArrayList<AbstractRule>();
+		_boiddata = new FlockData();
+		_rules = new ArrayList<BatchRule>();
+		_focusregions = new ArrayList<FRectangle>();
 	}
 	
 	/**
@@ -102,18 +239,492 @@ public class FlockEngine{
 	 * @param gridSize	the width&height of each grid space
 	 */
 	public void enableGrid(int gridSize, FRectangle bounds){
-		_boidgrid = new FlockGrid(gridSize, (int)bounds.getWidth(), (int)bounds.getHeight());
-		isGridEnabled = true;
-		
-		for(AbstractRule rule: _rules){
-			if(rule instanceof BoundRule){
-				rule = new BoundRule(bounds, 75);
-				return;
+		setSpatialIndex(new FlockGrid(gridSize, (int)bounds.getWidth(), (int)bounds.getHeight(), _boiddata));
+		if(!isWrapEnabled) addBoundRule(bounds);
+	}
+	
+	/**
+	 * Enable the Compact Grid optimization
+	 * 
+	 * Unlike {@link #enableGrid(int, FRectangle)} the grid is rebuilt from scratch
+	 * at the start of every update with a counting sort of the boid slots by cell,
+	 * so its cost stays the same however many boids cross cell boundaries. With the
+	 * parallel update enabled the rebuild is split across the same pool.
+	 * 
+	 * @param gridSize	the width&height of each grid space
+	 * @param bounds	the bounds of the grid
+	 */
+	public void enableCompactGrid(int gridSize, FRectangle bounds){
+		setSpatialIndex(new CompactGrid(gridSize, (int)bounds.getWidth(), (int)bounds.getHeight()));
+		if(!isWrapEnabled) addBoundRule(bounds);
+	}
+	
+	/**
+	 * Enable the Hashed Grid optimization
+	 * 
+	 * Unlike {@link #enableGrid(int, FRectangle)} the grid has no bounds, only the
+	 * cells that hold boids are stored so boids are tracked wherever they go, and
+	 * the flock isn't kept inside any bounds.
+	 * 
+	 * @param gridSize	the width&height of each grid space
+	 */
+	public void enableHashedGrid(int gridSize){
+		setSpatialIndex(new HashedGrid(gridSize));
+	}
+	
+	/**
+	 * Enable the Quadtree optimization, for flocks that bunch up into a few
+	 * dense groups. The tree grows past its bounds as the flock flies out of
+	 * them, so the flock isn't kept inside any bounds.
+	 * 
+	 * @param bounds	the area the tree starts out covering
+	 * @see Quadtree
+	 */
+	public void enableQuadtree(FRectangle bounds){
+		setSpatialIndex(new Quadtree(bounds));
+	}
+	
+	/**
+	 * Enable the K-D Tree optimization, the tree is rebuilt balanced at the
+	 * start of every update, split across the pool of the parallel update
+	 * when it's enabled. It has no bounds.
+	 * 
+	 * @see KdTree
+	 */
+	public void enableKdTree(){
+		setSpatialIndex(new KdTree());
+	}
+	
+	/**
+	 * Set the Spatial Index used to find the neighbours of each boid, replacing the
+	 * one enabled before. The boids already in the flock are added to the index.
+	 * 
+	 * @param index		the index to use, or null to go through the whole flock
+	 */
+	public void setSpatialIndex(SpatialIndex index){
+		if(index != null){
+			if(isWrapEnabled) wrapIndex(index, wrapX, wrapY, wrapWidth, wrapHeight);
+			index.setSearchRadius(radius);
+			
+			// Track the boids that are already in the flock
+			for(int i=0; i<_boiddata.size; i++){
+				Flockable boid = _boiddata.boids[i];
+				index.addBoid(i, boid.getPosition().x, boid.getPosition().y);
 			}
 		}
 		
-		BoundRule brule = new BoundRule(bounds, 75);
-		addRule(brule);
+		_index = index;
+	}
+	
+	/**
+	 * Get the Spatial Index used to find the neighbours of each boid
+	 * @return		the index, or null if the whole flock is gone through
+	 */
+	public SpatialIndex getSpatialIndex(){
+		return _index;
+	}
+	
+	/**
+	 * Enable the Wrap Around mode, the world becomes a torus
+	 * 
+	 * Boids leaving one edge of the bounds come back in at the opposite edge,
+	 * and every distance between boids is measured to the closest image of the
+	 * neighbour, across the edges if that's shorter. As there are no edges to
+	 * keep the flock from, the bound rule is removed and the grids don't add one.
+	 * 
+	 * Only the bounded grids can wrap around, and they still cover their bounds
+	 * from the origin, so the bounds must start at the origin when a grid is
+	 * enabled, and should match those of the grid.
+	 * 
+	 * @param bounds	the bounds of the world
+	 * @throws IllegalArgumentException	if a grid is enabled and the bounds don't start at the origin
+	 */
+	public void enableWrap(FRectangle bounds){
+		if(_index != null) wrapIndex(_index, bounds.getX(), bounds.getY(), bounds.getWidth(), bounds.getHeight());
+		
+		wrapX = bounds.getX();
+		wrapY = bounds.getY();
+		wrapWidth = bounds.getWidth();
+		wrapHeight = bounds.getHeight();
+		isWrapEnabled = true;
+		
+		for(int i=_rules.size()-1; i>=0; i--){
+			if(_rules.get(i) instanceof BoundRule) _rules.remove(i);
+		}
+	}
+	
+	/**
+	 * Make a spatial index wrap around the world
+	 * 
+	 * @param index		the index to wrap
+	 * @param x			the left edge of the world
+	 * @param y			the top edge of the world
+	 * @param width		the width of the world
+	 * @param height	the height of the world
+	 */
+	private void wrapIndex(SpatialIndex index, float x, float y, float width, float height){
+		if(!(index instanceof AbstractGrid))
+			throw new IllegalStateException("Only the grids can wrap around");
+		if(x != 0 || y != 0)
+			throw new IllegalArgumentException("A wrapped grid covers the world from the origin");
+		
+		((AbstractGrid)index).setWrap(width, height);
+	}
+	
+	/**
+	 * Keep the flock inside the bounds of a grid, unless
+	 * there's already a bound rule doing so
+	 * 
+	 * @param bounds	the bounds of the grid
+	 */
+	private void addBoundRule(FRectangle bounds){
+		for(BatchRule rule: _rules){
+			if(rule instanceof BoundRule) return;
+		}
+		
+		addRule(new BoundRule(bounds, 75));
+	}
+	
+	/**
+	 * Enable the Array Storage optimization
+	 * 
+	 * The engine will simulate the flock out of primitive float columns
+	 * indexed by boid slot (see {@link FlockData}) rather than through
+	 * the Flockable interface. The Flockable objects are read at the start
+	 * of each update and written back at the end of it, so they should
+	 * not be relied upon to change mid-update.
+	 */
+	public void enableArrayStorage(){
+		isArrayStorageEnabled = true;
+	}
+	
+	/**
+	 * Enable the Parallel Update optimization on a pool of its own
+	 * 
+	 * @param parallelism	the number of threads to split the update across,
+	 * 						leave room for the rest of the game loop here
+	 * @see #enableParallel(ForkJoinPool)
+	 */
+	public void enableParallel(int parallelism){
+		enableParallel(new ForkJoinPool(parallelism));
+	}
+	
+	/**
+	 * Enable the Parallel Update optimization, the flock will be partitioned
+	 * into chunks of slots that are updated on the given pool. Requires the 
+	 * array storage to be enabled.
+	 * 
+	 * Unless the synchronous update is enabled each boid is still moved in
+	 * place, so like the single threaded update a boid may see neighbours that
+	 * have already moved this tick, only now which ones depends on thread timing.
+	 * Any rules added to the engine will be called from several threads at once
+	 * and must be safe to do so.
+	 * 
+	 * @param pool		the pool to run the update on, this can be shared
+	 * 					with the rest of the application
+	 */
+	public void enableParallel(ForkJoinPool pool){
+		if(!isArrayStorageEnabled)
+			throw new IllegalStateException("The parallel update requires array storage, call enableArrayStorage() first");
+		
+		_pool = pool;
+		_chunkscratch = new FlockScratch[pool.getParallelism() * chunksPerWorker];
+		for(int i=0; i<_chunkscratch.length; i++){
+			_chunkscratch[i] = new FlockScratch();
+			_chunkscratch[i].timed = _metricslistener != null;
+		}
+		isParallelEnabled = true;
+	}
+	
+	/**
+	 * Enable the Synchronous Update mode, requires the array storage to be enabled
+	 * 
+	 * Every boid is steered from the state of the flock at the start of the tick
+	 * and written into the next tick's columns, which are swapped in once the
+	 * whole flock has been stepped. The result no longer depends on the order of
+	 * the flock, is deterministic under the parallel update, and the current
+	 * columns of {@link #getData()} stay untouched while the update runs.
+	 */
+	public void enableSynchronousUpdate(){
+		if(!isArrayStorageEnabled)
+			throw new IllegalStateException("The synchronous update requires array storage, call enableArrayStorage() first");
+		
+		isSynchronousEnabled = true;
+	}
+	
+	/**
+	 * Disable the Synchronous Update mode, boids go back to being moved in place
+	 */
+	public void disableSynchronousUpdate(){
+		isSynchronousEnabled = false;
+	}
+	
+	/**
+	 * Enable the Topological mode, requires the array storage to be enabled
+	 * 
+	 * Each boid flocks with its k nearest neighbours, however far away or close
+	 * together they are, instead of with every boid within the interaction radius.
+	 * The cost of a boid then stays the same when the flock bunches up.
+	 * 
+	 * The neighbours are searched for through the spatial index in a radius that
+	 * starts from where the boid found them on the last update and grows until k
+	 * are in it, so an adaptive index ({@link #enableQuadtree(FRectangle)} or
+	 * {@link #enableKdTree()}) suits it best.
+	 * 
+	 * @param k		the number of neighbours each boid flocks with
+	 */
+	public void enableTopological(int k){
+		if(!isArrayStorageEnabled)
+			throw new IllegalStateException("The topological mode requires array storage, call enableArrayStorage() first");
+		if(k < 1)
+			throw new IllegalArgumentException("A boid needs at least one neighbour to flock with");
+		
+		topologicalK = k;
+	}
+	
+	/**
+	 * Disable the Topological mode, boids go back to flocking with
+	 * every boid within the interaction radius
+	 */
+	public void disableTopological(){
+		topologicalK = 0;
+	}
+	
+	/**
+	 * Enable the Level of Detail mode, requires the array storage to be enabled
+	 * 
+	 * Boids within the distance of a focus region (ie. the camera's view) are
+	 * stepped every update as usual. The ones further out are only stepped once
+	 * every few updates, with the time they've gone without, and only flock with
+	 * the nearest few of the boids within the interaction radius, so a flock that's
+	 * mostly out of sight costs a fraction of an update. A far boid comes back to being stepped every
+	 * update as soon as it gets within the distance again.
+	 * 
+	 * With no focus regions every boid is far.
+	 * 
+	 * @param distance			the distance from the focus regions within which boids are stepped every update
+	 * @param interval			the number of updates a far boid is stepped once in
+	 * @param neighbourCap		the most neighbours a far boid flocks with
+	 */
+	public void enableLevelOfDetail(float distance, int interval, int neighbourCap){
+		if(!isArrayStorageEnabled)
+			throw new IllegalStateException("The level of detail mode requires array storage, call enableArrayStorage() first");
+		if(interval < 1 || neighbourCap < 1)
+			throw new IllegalArgumentException("The interval and neighbour cap must be at least 1");
+		
+		lodDistance = distance;
+		lodInterval = interval;
+		lodNeighbourCap = neighbourCap;
+	}
+	
+	/**
+	 * Disable the Level of Detail mode, every boid goes back to being
+	 * stepped every update. The time the far boids have gone without being
+	 * stepped is made up for on the next update.
+	 */
+	public void disableLevelOfDetail(){
+		lodInterval = 0;
+	}
+	
+	/**
+	 * Enable the Neighbour Lists optimization, requires the array storage to be enabled
+	 * 
+	 * Every boid keeps a list of the boids within the interaction radius plus the
+	 * skin distance of it, and is steered from its list instead of asking the
+	 * spatial index for its neighbours again. The lists are only built again once
+	 * a boid could have moved more than half the skin since they were last built,
+	 * so a slow moving flock skips most of its neighbour queries. A bigger skin
+	 * builds the lists less often, but makes them longer.
+	 * 
+	 * The lists aren't used in the topological mode, or for the far boids of
+	 * the level of detail mode. Nor are they used while the skin is too thin for
+	 * them to last from one update to the next, ie. for a fast flock, the boids
+	 * are steered through the spatial index instead.
+	 * 
+	 * @param skin		the extra distance the lists reach out to
+	 */
+	public void enableNeighbourLists(float skin){
+		if(!isArrayStorageEnabled)
+			throw new IllegalStateException("The neighbour lists require array storage, call enableArrayStorage() first");
+		if(!(skin > 0))
+			throw new IllegalArgumentException("The skin must be above zero");
+		
+		_neighbourlists = new NeighbourLists(skin);
+	}
+	
+	/**
+	 * Disable the Neighbour Lists optimization, boids go back to
+	 * finding their neighbours through the spatial index
+	 */
+	public void disableNeighbourLists(){
+		_neighbourlists = null;
+	}
+	
+	/**
+	 * Enable the Symmetric Pairs optimization, requires the synchronous update to be enabled
+	 * 
+	 * Instead of every boid looking through the cells around it for its neighbours,
+	 * each cell of the {@link CompactGrid} is paired with only half of the cells
+	 * around it before any boid is steered. The distance between two boids is then
+	 * measured once and each is added into the other's neighbour sums, which halves
+	 * the distance checks of the update. Since the boids are only steered from the
+	 * state at the start of the tick, it makes no difference which of the two adds
+	 * up a pair.
+	 * 
+	 * It only works with the compact grid index on a world that doesn't wrap, in the
+	 * topological mode or without them the boids are summed up one at a time again,
+	 * as are the boids outside the bounds of the grid and the far boids of the level
+	 * of detail mode. It takes over from the neighbour lists when both are enabled.
+	 */
+	public void enableSymmetricPairs(){
+		if(!isSynchronousEnabled)
+			throw new IllegalStateException("The symmetric pairs require the synchronous update, call enableSynchronousUpdate() first");
+		
+		_symmetricpairs = new SymmetricPairs();
+	}
+	
+	/**
+	 * Disable the Symmetric Pairs optimization, boids go back to
+	 * summing up their own neighbours
+	 */
+	public void disableSymmetricPairs(){
+		_symmetricpairs = null;
+	}
+	
+	/**
+	 * Enable a Neighbour Kernel, requires the array storage to be enabled
+	 * 
+	 * The kernel takes over summing up Reynold's Rules over the whole flock when
+	 * there's no spatial index, see {@link NeighbourKernel}. The neighbours found
+	 * through an index or the neighbour lists, wrapped worlds and the symmetric
+	 * pairs are still summed up by the engine.
+	 * 
+	 * @param kernel		the kernel to sum up the neighbours with
+	 * @see #enableVectorKernel()
+	 */
+	public void enableNeighbourKernel(NeighbourKernel kernel){
+		if(!isArrayStorageEnabled)
+			throw new IllegalStateException("The neighbour kernel requires array storage, call enableArrayStorage() first");
+		
+		_kernel = kernel;
+	}
+	
+	/**
+	 * Enable the SIMD kernel of the r0adkll-flocking-vector project, requires the array storage to be enabled
+	 * 
+	 * The vector kernel measures a boid against 8 or 16 of its candidate neighbours at
+	 * once, however many lanes the CPU's vector registers have. It's built on the
+	 * incubating Vector API of Java 17 and later, so it's only found when its jar is on
+	 * the classpath and the JVM was started with --add-modules jdk.incubator.vector.
+	 * Otherwise the engine keeps summing the neighbours up one at a time. It only takes
+	 * over where any other kernel would, see {@link #enableNeighbourKernel(NeighbourKernel)}.
+	 * 
+	 * @return		true if the vector kernel was found and enabled
+	 */
+	public boolean enableVectorKernel(){
+		if(!isArrayStorageEnabled)
+			throw new IllegalStateException("The neighbour kernel requires array storage, call enableArrayStorage() first");
+		
+		try{
+			Class<?> kernel = Class.forName("net.r0adkll.flocking.vector.VectorKernel");
+			_kernel = (NeighbourKernel) kernel.getDeclaredConstructor().newInstance();
+			return true;
+		}catch(Exception e){
+			// The kernel isn't on the classpath
+			return false;
+		}catch(LinkageError e){
+			// Or the vector module isn't there to run it
+			return false;
+		}
+	}
+	
+	/**
+	 * Disable the Neighbour Kernel, the engine goes back to
+	 * summing up the neighbours itself
+	 */
+	public void disableNeighbourKernel(){
+		_kernel = null;
+	}
+	
+	/**
+	 * Enable the Amortised Update mode, requires the array storage to be enabled
+	 * 
+	 * Each update only steps the boids it has time for within the budget, carrying
+	 * on from where the last update left off, so the whole flock is stepped over
+	 * the course of a few updates when it's too big to be stepped in one. Each
+	 * boid is stepped with all the time it's gone without, so the flock moves at
+	 * the same speed, it just steers from a staler view of its neighbours.
+	 * 
+	 * Only stepping the boids is budgeted, the rules, the spatial index and
+	 * syncing the boids still cover the whole flock every update. The boids are
+	 * stepped on the updating thread even with the parallel update enabled.
+	 * 
+	 * @param millis		the time each update may spend stepping boids, in milliseconds
+	 */
+	public void enableTimeBudget(float millis){
+		if(!isArrayStorageEnabled)
+			throw new IllegalStateException("The amortised update requires array storage, call enableArrayStorage() first");
+		if(!(millis > 0))
+			throw new IllegalArgumentException("The time budget must be above zero");
+		
+		budgetNanos = (long)(millis * 1000000);
+	}
+	
+	/**
+	 * Disable the Amortised Update mode, the whole flock goes back to being
+	 * stepped every update. The time the boids that were left out have gone
+	 * without is made up for on the next update.
+	 */
+	public void disableTimeBudget(){
+		budgetNanos = 0;
+	}
+	
+	/**
+	 * Add a region of interest for the Level of Detail mode, the region is
+	 * kept rather than copied so it can be moved along with a camera
+	 * 
+	 * @param region		the region to keep at full detail
+	 */
+	public void addFocusRegion(FRectangle region){
+		_focusregions.add(region);
+	}
+	
+	/**
+	 * Remove a region of interest of the Level of Detail mode
+	 * 
+	 * @param region		the region to remove
+	 */
+	public void removeFocusRegion(FRectangle region){
+		_focusregions.remove(region);
+	}
+	
+	/**
+	 * Set the listener to hand the timings and counters of every update to,
+	 * see {@link FlockMetrics} for what is recorded. Every boid is timed
+	 * while a listener is set, which slows the update down a little.
+	 * 
+	 * @param listener		the listener, or null to stop recording
+	 */
+	public void setMetricsListener(FlockMetricsListener listener){
+		_metricslistener = listener;
+		_metrics.tick = 0;
+		
+		_scratch.timed = listener != null;
+		if(_chunkscratch != null){
+			for(int i=0; i<_chunkscratch.length; i++){
+				_chunkscratch[i].timed = listener != null;
+			}
+		}
+	}
+	
+	/**
+	 * Disable the Parallel Update optimization, the pool is left
+	 * running for the caller to shut down if it needs to be
+	 */
+	public void disableParallel(){
+		isParallelEnabled = false;
+		_pool = null;
+		_chunkscratch = null;
 	}
 	
 	
@@ -126,20 +737,45 @@ public class FlockEngine{
 	 * Update the Flock Controller
 	 * @param elapsed	the frame elapsed time
 	 */
-	private Vector2D ruleResult = null;
 	public void update(float elapsed){
-		for(int i=0; i<_boidflock.size(); i++){
-			Flockable boid = _boidflock.get(i);
+		if(isArrayStorageEnabled){
+			updateArrays(elapsed);
+			return;
+		}
+		
+		boolean timed = _metricslistener != null;
+		FlockMetrics metrics = _metrics;
+		if(timed) beginMetrics();
+		long start = timed ? System.nanoTime() : 0;
+		
+		// The rules and the index work out of the array storage
+		boolean rules = _rules.size() > 0;
+		if(rules || _index != null) _boiddata.pull();
+		long pulled = timed ? System.nanoTime() : 0;
+		
+		// Let the index catch up with the flock
+		if(_index != null) _index.prepare(_boiddata, null);
+		long prepared = timed ? System.nanoTime() : 0;
+		
+		// Apply all the user set rules to the whole flock
+		if(rules) applyRules(false);
+		long ruled = timed ? System.nanoTime() : 0;
+		
+		for(int i=0; i<_boiddata.size; i++){
+			Flockable boid = _boiddata.boids[i];
+			long boidStart = timed ? System.nanoTime() : 0;
+			
+			// Rules are free to move the boid
+			if(rules) boid.getPosition().set(_boiddata.posX[i], _boiddata.posY[i]);
 			
 			// Apply Reynold's Rules
 			Vector2D acceleration = applyReynoldRules(boid);
+			long steered = timed ? System.nanoTime() : 0;
 			
-			// Apply all the user set rules
-			for(int r=0; r<_rules.size(); r++){
-				ruleResult = _rules.get(r).applyRule(boid);
-				if(ruleResult != null){
-					acceleration.add(ruleResult);
-				}
+			// Add the acceleration of the user set rules
+			if(rules){
+				acceleration.x += _ruleaccX[i];
+				acceleration.y += _ruleaccY[i];
 			}
 						
 			// Apply Acceleration to the Boid velocity
@@ -152,15 +788,327 @@ public class FlockEngine{
 			// the time elapsed between frames
 			boid.getPosition().add(Vector2D.mult(boid.getVelocity(), elapsed));
 			
+			// Come back in at the opposite edge
+			if(isWrapEnabled){
+				boid.getPosition().x = MathUtils.wrap(boid.getPosition().x, wrapX, wrapWidth);
+				boid.getPosition().y = MathUtils.wrap(boid.getPosition().y, wrapY, wrapHeight);
+			}
+			
 			// Update Rect
 			boid.getBounds().setX(boid.getPosition().x);
 			boid.getBounds().setY(boid.getPosition().y);
 			
-			// Update Grid
-			if(isGridEnabled) _boidgrid.update(boid);
+			long moved = timed ? System.nanoTime() : 0;
+			
+			// Update Index
+			if(_index != null) _index.update(i, boid.getPosition().x, boid.getPosition().y);
+			
+			if(timed){
+				metrics.indexNanos += System.nanoTime() - moved;
+				metrics.steeringNanos += steered - boidStart;
+				metrics.integrationNanos += moved - steered;
+				metrics.neighbours += cohesionCount;
+			}
+		}
+		
+		// Let the rules know the update is done
+		if(rules) endRules();
+		
+		if(timed){
+			long end = System.nanoTime();
+			metrics.syncNanos = pulled - start;
+			metrics.indexNanos += prepared - pulled;
+			metrics.rulesNanos = ruled - prepared;
+			metrics.stepNanos = end - ruled;
+			metrics.cellsVisited = _objectvisitor.cellsVisited;
+			metrics.candidates = _objectvisitor.candidates;
+			metrics.stepped = _boidflock.size();
+			endMetrics(end - start);
 		}
 	}
 	
+	/**
+	 * Update the Flock out of the array storage
+	 * @param elapsed	the frame elapsed time
+	 */
+	private void updateArrays(float elapsed){
+		FlockData data = _boiddata;
+		boolean timed = _metricslistener != null;
+		if(timed) beginMetrics();
+		long start = timed ? System.nanoTime() : 0;
+		
+		// Pick up any changes made to the boids since the last update
+		data.pull();
+		
+		// Bring boids that were moved out of the world back in
+		if(isWrapEnabled){
+			for(int i=0; i<data.size; i++){
+				data.posX[i] = MathUtils.wrap(data.posX[i], wrapX, wrapWidth);
+				data.posY[i] = MathUtils.wrap(data.posY[i], wrapY, wrapHeight);
+			}
+		}
+		
+		long pulled = timed ? System.nanoTime() : 0;
+		
+		// Let the index catch up with the flock
+		if(_index != null) _index.prepare(data, isParallelEnabled ? _pool : null);
+		long prepared = timed ? System.nanoTime() : 0;
+		
+		// Apply all the user set rules to the whole flock before any boid is steered
+		boolean parallel = isParallelEnabled && data.size >= parallelThreshold;
+		boolean rules = _rules.size() > 0;
+		if(rules) applyRules(parallel);
+		long ruled = timed ? System.nanoTime() : 0;
+		
+		// Make room for the search radius of every slot
+		if((topologicalK > 0 || lodInterval > 0) && _nearestradius.length < data.size){
+			_nearestradius = Arrays.copyOf(_nearestradius, data.boids.length);
+		}
+		
+		// And for the time every slot has gone without being stepped
+		if((lodInterval > 0 || budgetNanos > 0) && _lodelapsed.length < data.size){
+			_lodelapsed = Arrays.copyOf(_lodelapsed, data.boids.length);
+			_lodaccX = Arrays.copyOf(_lodaccX, data.boids.length);
+			_lodaccY = Arrays.copyOf(_lodaccY, data.boids.length);
+		}
+		
+		// Build the neighbour lists again once a boid might miss a neighbour
+		NeighbourLists lists = _neighbourlists;
+		if(lists != null && topologicalK == 0){
+			float ww = isWrapEnabled ? wrapWidth : 0;
+			float wh = isWrapEnabled ? wrapHeight : 0;
+			
+			// Until the flock is swapped in, the boids that are stepped first
+			// move before the last ones are steered
+			float step = speedLimit * elapsed;
+			float move = isSynchronousEnabled ? 0 : step;
+			float speed = isSynchronousEnabled ? 0 : speedLimit;
+			if(lists.refresh(data, _index, radius + lists.skin, step, move, speed, _lodelapsed, ww, wh) && timed){
+				_metrics.listsBuilt = true;
+			}
+		}
+		
+		// Add up the neighbour sums of the whole flock a pair of boids at a time
+		SymmetricPairs pairs = _symmetricpairs;
+		if(pairs != null){
+			pairs.usable = false;
+			if(isSynchronousEnabled && topologicalK == 0 && !isWrapEnabled && _index instanceof CompactGrid){
+				pairs.accumulate(data, (CompactGrid) _index, radius, separationDistSq, separationDistMinSq,
+						parallel ? _pool : null);
+				if(timed){
+					_metrics.cellsVisited += pairs.cellsVisited;
+					_metrics.candidates += pairs.candidates;
+				}
+			}
+		}
+		long listed = timed ? System.nanoTime() : 0;
+		
+		if(budgetNanos > 0){
+			stepSlice(elapsed);
+		}else{
+			if(parallel){
+				_pool.invoke(new StepTask(0, _chunkscratch.length, elapsed, false));
+			}else{
+				for(int i=0; i<data.size; i++){
+					step(i, elapsed, _scratch);
+				}
+			}
+			_lodtick++;
+		}
+		long stepped = timed ? System.nanoTime() : 0;
+		
+		// Swap the next tick in
+		if(isSynchronousEnabled) data.swap();
+		
+		// Hand the new state back to the boids
+		data.push();
+		long pushed = timed ? System.nanoTime() : 0;
+		
+		// Update Index
+		if(_index != null){
+			for(int i=0; i<data.size; i++){
+				_index.update(i, data.posX[i], data.posY[i]);
+			}
+		}
+		
+		// Let the rules know the update is done
+		if(rules) endRules();
+		
+		if(timed){
+			long end = System.nanoTime();
+			FlockMetrics metrics = _metrics;
+			metrics.syncNanos = (pulled - start) + (pushed - stepped);
+			metrics.indexNanos = (prepared - pulled) + (listed - ruled) + (end - pushed);
+			metrics.rulesNanos = ruled - prepared;
+			metrics.stepNanos = stepped - listed;
+			metrics.add(_scratch);
+			if(parallel){
+				metrics.workers = _pool.getParallelism();
+				for(int i=0; i<_chunkscratch.length; i++){
+					metrics.add(_chunkscratch[i]);
+				}
+			}
+			endMetrics(end - start);
+		}
+	}
+	
+	/**
+	 * Apply the user set rules to the whole flock, leaving the acceleration
+	 * they give each slot in the rule acceleration columns
+	 * 
+	 * @param parallel		true to split the flock across the pool of the parallel update
+	 */
+	private void applyRules(boolean parallel){
+		FlockData data = _boiddata;
+		if(_ruleaccX.length < data.size){
+			_ruleaccX = new float[data.boids.length];
+			_ruleaccY = new float[data.boids.length];
+		}
+		
+		int count = _rules.size();
+		if(_ruleinfluence.length < count){
+			_ruleinfluence = new FRectangle[count];
+		}
+		
+		// Remember where the boids were, the index was prepared from these positions
+		if(_index != null){
+			if(_ruleposX.length < data.size){
+				_ruleposX = new float[data.boids.length];
+				_ruleposY = new float[data.boids.length];
+			}
+			System.arraycopy(data.posX, 0, _ruleposX, 0, data.size);
+			System.arraycopy(data.posY, 0, _ruleposY, 0, data.size);
+		}
+		boolean culled = false;
+		for(int r=0; r<count; r++){
+			BatchRule rule = _rules.get(r);
+			rule.beginTick(data);
+			
+			// Culled rules can only be looked up through an index, and only
+			// when it tracks every boid in their region
+			_ruleinfluence[r] = null;
+			if(_index != null && rule instanceof CulledRule){
+				FRectangle influence = ((CulledRule)rule).getInfluence();
+				if(influence != null && _index.covers(influence.x, influence.y, influence.width, influence.height)){
+					_ruleinfluence[r] = influence;
+					culled = true;
+				}
+			}
+		}
+		
+		if(parallel){
+			_pool.invoke(new StepTask(0, _chunkscratch.length, 0, true));
+		}else{
+			applyRules(0, data.size);
+		}
+		
+		// The culled rules find their boids through the index, which has
+		// to see where the rules before them moved the boids to
+		if(culled) resyncIndex(parallel);
+		
+		// Hand each culled rule the boids in its region, one rule at a time
+		// as the regions may overlap
+		for(int r=0; r<count; r++){
+			FRectangle influence = _ruleinfluence[r];
+			if(influence == null) continue;
+			
+			_rulevisitor.rule = (CulledRule)_rules.get(r);
+			_index.forEachInRect(influence.x, influence.y, influence.width, influence.height, _rulevisitor);
+		}
+		_rulevisitor.rule = null;
+		
+		// Rules that moved boids, ie. out of an obstacle, leave the index behind
+		if(_index != null) resyncIndex(parallel);
+	}
+	
+	/**
+	 * Bring the index up to date with the boids the rules moved since it was
+	 * last prepared or brought up to date, so the queries that follow see where
+	 * the boids are now
+	 * 
+	 * @param parallel		true to rebuild the index across the pool of the parallel update
+	 */
+	private void resyncIndex(boolean parallel){
+		FlockData data = _boiddata;
+		boolean moved = false;
+		for(int i=0; i<data.size; i++){
+			float x = data.posX[i], y = data.posY[i];
+			if(x != _ruleposX[i] || y != _ruleposY[i]){
+				_index.update(i, x, y);
+				_ruleposX[i] = x;
+				_ruleposY[i] = y;
+				moved = true;
+			}
+		}
+		
+		// The indexes that are rebuilt every update ignore the boid by boid updates
+		if(moved) _index.prepare(data, parallel ? _pool : null);
+	}
+	
+	/**
+	 * Apply the user set rules to a range of slots of the flock
+	 * 
+	 * @param from		the first slot
+	 * @param to		the slot after the last one
+	 */
+	private void applyRules(int from, int to){
+		Arrays.fill(_ruleaccX, from, to, 0);
+		Arrays.fill(_ruleaccY, from, to, 0);
+		for(int r=0; r<_rules.size(); r++){
+			if(_ruleinfluence[r] != null) continue;
+			_rules.get(r).applyRule(_boiddata, from, to, _ruleaccX, _ruleaccY);
+		}
+	}
+	
+	/**
+	 * Visits the index on behalf of a culled rule, handing
+	 * it the slots in its region of influence
+	 */
+	private class RuleVisitor implements NeighbourVisitor {
+		CulledRule rule;
+		
+		@Override
+		public void visit(int[] slots, int from, int to) {
+			rule.applyRule(_boiddata, slots, from, to, _ruleaccX, _ruleaccY);
+		}
+	}
+	
+	/**
+	 * Let the user set rules know the update is done
+	 */
+	private void endRules(){
+		for(int r=0; r<_rules.size(); r++){
+			_rules.get(r).endTick();
+		}
+	}
+	
+	/**
+	 * Clear the metrics and the counters they're summed from for a new update
+	 */
+	private void beginMetrics(){
+		_metrics.reset();
+		_scratch.resetMetrics();
+		if(_chunkscratch != null){
+			for(int i=0; i<_chunkscratch.length; i++){
+				_chunkscratch[i].resetMetrics();
+			}
+		}
+		_objectvisitor.cellsVisited = 0;
+		_objectvisitor.candidates = 0;
+	}
+	
+	/**
+	 * Hand the metrics of the update that just finished to the listener
+	 * @param total		the wall time of the update
+	 */
+	private void endMetrics(long total){
+		FlockMetrics metrics = _metrics;
+		metrics.tick++;
+		metrics.boids = _boiddata.size;
+		metrics.totalNanos = total;
+		_metricslistener.onUpdate(metrics);
+	}
+	
 	
 	/**************************************************************************
 	 * Settings Methods
@@ -214,6 +1162,9 @@ public class FlockEngine{
 	 */
 	public void setInteractionRadius(float radii){
 		radius = radii;
+		
+		// The index searches as far as the boids interact
+		if(_index != null) _index.setSearchRadius(radius);
 	}
 	
 	public void setInnerSeperationRadius(float radii){
@@ -257,10 +1208,11 @@ public class FlockEngine{
 	public void addBoid(Flockable entity){
 		// Add to array list
 		_boidflock.add(entity);
+		int slot = _boiddata.add(entity);
 		
-		// Add to grid
-		if(isGridEnabled)
-			_boidgrid.addBoid(entity);
+		// Add to index
+		if(_index != null)
+			_index.addBoid(slot, entity.getPosition().x, entity.getPosition().y);
 	}
 	
 	/**
@@ -268,9 +1220,9 @@ public class FlockEngine{
 	 * @param boids
 	 */
 	public void addBoids(List<Flockable> boids){
-		_boidflock.addAll(boids);
-		if(isGridEnabled)
-			_boidgrid.addBoid(boids);
+		for(int i=0; i<boids.size(); i++){
+			addBoid(boids.get(i));
+		}
 	}
 
 	/**
@@ -278,25 +1230,49 @@ public class FlockEngine{
 	 * @param entity
 	 */
 	public void removeBoid(Flockable entity){
+		// Remove from index
+		if(_index != null)
+			_index.removeBoid(_boiddata.indexOf(entity));
+		
 		// Remove to List
 		_boidflock.remove(entity);
+		int slot = _boiddata.remove(entity);
+		
+		// The last boid was moved into the freed slot
+		if(_index != null && slot >= 0 && slot != _boiddata.size)
+			_index.moveSlot(_boiddata.size, slot);
 		
-		// Remove from grid
-		if(isGridEnabled)
-			_boidgrid.removeBoid(entity);
+		// The neighbour lists still point at the old slots
+		if(_neighbourlists != null) _neighbourlists.invalidate();
+		
+		// Along with the time it's gone without being stepped
+		if(slot >= 0 && slot < _lodelapsed.length){
+			int last = _boiddata.size;
+			boolean held = last < _lodelapsed.length;
+			_lodelapsed[slot] = held ? _lodelapsed[last] : 0;
+			_lodaccX[slot] = held ? _lodaccX[last] : 0;
+			_lodaccY[slot] = held ? _lodaccY[last] : 0;
+			if(held){
+				_lodelapsed[last] = 0;
+				_lodaccX[last] = 0;
+				_lodaccY[last] = 0;
+			}
+		}
 	}
 	
 	/**
-	 * Add a Flocking Rule to the engine
+	 * Add a Flocking Rule to the engine, either a {@link BatchRule} or
+	 * a per boid {@link net.r0adkll.flocking.rules.AbstractRule}. A bound
+	 * rule replaces the one already added, if any.
 	 * 
 	 * @param rule		the rule to add
 	 */
-	public void addRule(AbstractRule rule){
+	public void addRule(BatchRule rule){
 		// Safety check to only allow ONE Bound rule at a time
 		if(rule instanceof BoundRule){
-			for(AbstractRule r: _rules){
-				if(rule instanceof BoundRule){
-					rule = new BoundRule(((BoundRule)rule).getBounds(), 75);
+			for(int i=0; i<_rules.size(); i++){
+				if(_rules.get(i) instanceof BoundRule){
+					_rules.set(i, rule);
 					return;
 				}
 			}
@@ -310,7 +1286,7 @@ public class FlockEngine{
 	 * 
 	 * @param rule		the rule to remove
 	 */
-	public void removeRule(AbstractRule rule){
+	public void removeRule(BatchRule rule){
 		_rules.remove(rule);
 	}
 	
@@ -333,7 +1309,10 @@ public class FlockEngine{
 	private int separationCount = 0;
 	private int cohesionCount = 0;
 	
-	List<Flockable> nearby = null;
+	private ObjectVisitor _objectvisitor = new ObjectVisitor();
+	
+	// The closest image of a neighbour in a wrapped world
+	private Vector2D _wrapimage = new Vector2D();
 	
 	/**
 	 * Apply all the Reynold's Rules to the boid
@@ -360,47 +1339,15 @@ public class FlockEngine{
 		cohesionCount = 0;		
 		
 		
-		if(!isGridEnabled){
-			nearby = _boidflock;
-		}else{
-			nearby = _boidgrid.nearByObjects(boid.getPosition().x, boid.getPosition().y);
-		}
-		//System.out.println("Nearby Birds: " + nearby.size());
-		for(int i=0; i<nearby.size(); i++){
-			
-			// TODO: Create a 'cache' variable for this
-			Flockable ent = nearby.get(i);
-			if(ent != boid){
-				
-				// TODO: Potentially create a 'cache' variable for this
-				float distSq = boid.getPosition().distSq(ent.getPosition());
-				
-				// Main Distance Check
-	    		if (distSq < (radius*radius)) {
-	    			//System.out.println("Dist: " + distSq);
-	    			// added their pos to cohesion
-	    			cohesionSum.add(ent.getPosition());
-	    			cohesionCount++;
-
-	    			// add their velocity to alignment
-	    			alignmentSum.add(ent.getVelocity());
-	    			alignmentCount++;
-
-	    			// the separation distance will be smaller than cohere distance
-	    			// birds will try and maintain a particular distance from each other
-	    			if (distSq < separationDistSq) {
-	    				separationSum.add(ent.getPosition());
-	    				separationCount++;
-	    				
-	    				// This causes unwanted results in the flocking algorithm, so it is excluded for now (possible deletion)
-	    				if (distSq < separationDistMinSq) { // avoid being too close to any particular bird
-	    					separationSum.add(Vector2D.mult(boid.getPosition(), 10)); // PVector.mult(other,12) 
-	    					separationCount += 10;
-	    				} // separation minimum	    				
-	    				
-	    			} // separation dist check
-	    		} // dist check
+		if(_index == null){
+			for(int i=0; i<_boidflock.size(); i++){
+				accumulate(boid, _boidflock.get(i));
 			}
+			_objectvisitor.cellsVisited++;
+			_objectvisitor.candidates += _boidflock.size();
+		}else{
+			_objectvisitor.boid = boid;
+			_index.forEachNearby(boid.getPosition().x, boid.getPosition().y, radius, _objectvisitor);
 		}
 
 		/* COHESION RULE */
@@ -457,6 +1404,427 @@ public class FlockEngine{
 		return acceleration;
 	}
 	
+	/**
+	 * Run one slot of the flock through Reynold's Rules, the user set
+	 * rules and integration, straight out of the array storage
+	 * 
+	 * @param slot		the slot of the boid to update
+	 * @param elapsed	the frame elapsed time
+	 * @param scratch	the scratch state of the calling worker
+	 */
+	private void step(int slot, float elapsed, FlockScratch scratch){
+		FlockData data = _boiddata;
+		
+		// Far boids of the level of detail mode are only stepped every few
+		// updates, with all the time they've gone without
+		scratch.neighbourCap = Integer.MAX_VALUE;
+		boolean rules = _rules.size() > 0;
+		float heldX = 0, heldY = 0;
+		if(slot < _lodelapsed.length){
+			if(lodInterval > 0 && !isNearFocus(data.posX[slot], data.posY[slot])){
+				if((_lodtick + slot) % lodInterval != 0){
+					hold(slot, elapsed, rules);
+					return;
+				}
+				scratch.neighbourCap = lodNeighbourCap;
+			}
+			
+			// Along with the rule acceleration of the updates it went without
+			elapsed += _lodelapsed[slot];
+			heldX = _lodaccX[slot];
+			heldY = _lodaccY[slot];
+			_lodelapsed[slot] = 0;
+			_lodaccX[slot] = _lodaccY[slot] = 0;
+		}
+		
+		boolean timed = scratch.timed;
+		long start = timed ? System.nanoTime() : 0;
+		
+		// Apply Reynold's Rules
+		steer(slot, scratch);
+		float ax = scratch.steerX;
+		float ay = scratch.steerY;
+		long steered = timed ? System.nanoTime() : 0;
+		
+		// Add the acceleration of the user set rules, which
+		// have already been applied to the whole flock
+		if(rules){
+			ax += _ruleaccX[slot] + heldX;
+			ay += _ruleaccY[slot] + heldY;
+		}
+		float px = data.posX[slot];
+		float py = data.posY[slot];
+		
+		// Apply Acceleration to the Boid velocity
+		float vx = data.velX[slot] + ax;
+		float vy = data.velY[slot] + ay;
+		
+		// Limit Boid Velocity to speedlimit
+		float magSq = vx * vx + vy * vy;
+		if(magSq > (speedLimit * speedLimit)){
+			float mag = (float) Math.sqrt(magSq);
+			vx = (vx / mag) * speedLimit;
+			vy = (vy / mag) * speedLimit;
+		}
+		
+		// Finally, add the boid velocity to its position after multiplying it by 
+		// the time elapsed between frames
+		px += vx * elapsed;
+		py += vy * elapsed;
+		
+		// Come back in at the opposite edge
+		if(isWrapEnabled){
+			px = MathUtils.wrap(px, wrapX, wrapWidth);
+			py = MathUtils.wrap(py, wrapY, wrapHeight);
+		}
+		
+		if(isSynchronousEnabled){
+			data.nextVelX[slot] = vx;
+			data.nextVelY[slot] = vy;
+			data.nextPosX[slot] = px;
+			data.nextPosY[slot] = py;
+			data.nextRotation[slot] = scratch.rotation;
+		}else{
+			data.velX[slot] = vx;
+			data.velY[slot] = vy;
+			data.posX[slot] = px;
+			data.posY[slot] = py;
+			data.rotation[slot] = scratch.rotation;
+		}
+		
+		if(timed){
+			scratch.steeringNanos += steered - start;
+			scratch.integrationNanos += System.nanoTime() - steered;
+			scratch.neighbours += scratch.cohesionCount;
+			scratch.stepped++;
+		}
+	}
+	
+	/**
+	 * Step the boids of the amortised update, starting from the slot the last
+	 * update stopped at and going round the flock until the time budget is spent.
+	 * The boids that are left out make up for it the next time they're stepped.
+	 * 
+	 * The level of detail mode counts the times round the flock rather than the
+	 * updates, so its far boids are still stepped once in every few times they
+	 * come up.
+	 * 
+	 * @param elapsed	the frame elapsed time
+	 */
+	private void stepSlice(float elapsed){
+		FlockData data = _boiddata;
+		int size = data.size;
+		if(size == 0) return;
+		
+		long deadline = System.nanoTime() + budgetNanos;
+		int slot = _slicecursor < size ? _slicecursor : 0;
+		int count = 0;
+		while(count < size){
+			step(slot, elapsed, _scratch);
+			count++;
+			if(++slot == size){
+				slot = 0;
+				_lodtick++;
+			}
+			
+			// Check the clock every few boids, it's not free
+			if((count & 31) == 0 && System.nanoTime() >= deadline) break;
+		}
+		_slicecursor = slot;
+		
+		// Carry the rest of the flock over to the next update
+		boolean rules = _rules.size() > 0;
+		for(; count<size; count++){
+			hold(slot, elapsed, rules);
+			if(++slot == size) slot = 0;
+		}
+	}
+	
+	/**
+	 * Leave a boid where it is for this update, it makes up for the time
+	 * and the rule acceleration the next time it's stepped
+	 * 
+	 * @param slot		the slot of the boid
+	 * @param elapsed	the frame elapsed time
+	 * @param rules		true if the rules were applied this update
+	 */
+	private void hold(int slot, float elapsed, boolean rules){
+		_lodelapsed[slot] += elapsed;
+		if(rules){
+			_lodaccX[slot] += _ruleaccX[slot];
+			_lodaccY[slot] += _ruleaccY[slot];
+		}
+		if(isSynchronousEnabled) _boiddata.hold(slot);
+	}
+	
+	/**
+	 * Check if a position is close enough to a focus region of the
+	 * level of detail mode to be stepped every update
+	 */
+	private boolean isNearFocus(float x, float y){
+		float distSq = lodDistance * lodDistance;
+		for(int i=0; i<_focusregions.size(); i++){
+			FRectangle region = _focusregions.get(i);
+			float dx = Math.max(Math.max(region.x - x, x - (region.x + region.width)), 0);
+			float dy = Math.max(Math.max(region.y - y, y - (region.y + region.height)), 0);
+			if(dx * dx + dy * dy <= distSq) return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Apply all the Reynold's Rules to a slot of the array storage,
+	 * leaving the resulting acceleration in the scratch steerX/steerY
+	 * 
+	 * @param slot		the slot of the boid to apply the rules too
+	 * @param scratch	the scratch state of the calling worker
+	 */
+	private void steer(int slot, FlockScratch scratch){
+		FlockData data = _boiddata;
+		scratch.begin(data, slot, radius * radius, separationDistSq, separationDistMinSq);
+		scratch.rotation = data.rotation[slot];
+		scratch.wrapWidth = isWrapEnabled ? wrapWidth : 0;
+		scratch.wrapHeight = isWrapEnabled ? wrapHeight : 0;
+		scratch.kernel = _kernel;
+		
+		// Sum up the neighbours, the index hands its slots straight to the scratch
+		if(topologicalK > 0){
+			NearestNeighbours nearest = findNearest(slot, scratch);
+			scratch.radiusSq = Float.POSITIVE_INFINITY;
+			scratch.visit(nearest.slots, 0, nearest.count);
+		}else if(scratch.neighbourCap < Integer.MAX_VALUE){
+			// A capped boid flocks with the nearest of the boids in its radius
+			NearestNeighbours nearest = findNearest(slot, scratch);
+			scratch.visit(nearest.slots, 0, nearest.count);
+		}else if(_symmetricpairs != null && _symmetricpairs.usable
+				&& _symmetricpairs.load(slot, (CompactGrid) _index, scratch)){
+			// The sums were added up before the flock was stepped
+		}else if(_neighbourlists != null && _neighbourlists.usable){
+			NeighbourLists lists = _neighbourlists;
+			scratch.visit(lists.list.items, lists.start[slot], lists.start[slot + 1]);
+		}else if(_index != null){
+			_index.forEachNearby(scratch.px, scratch.py, radius, scratch);
+		}else{
+			scratch.visit(null, 0, data.size);
+		}
+		
+		float px = scratch.px;
+		float py = scratch.py;
+		int cohCount = scratch.cohesionCount;
+		int aliCount = scratch.alignmentCount;
+		int sepCount = scratch.separationCount;
+		float ax = 0, ay = 0;
+		
+		/* COHESION RULE */
+		if(cohCount > 0){
+			float inv = 1f / cohCount;
+			float desiredX = (px - scratch.cohesionX * inv) * cohesion;
+			float desiredY = (py - scratch.cohesionY * inv) * cohesion;
+			
+			// Avoid Tightly Packed Groups
+			if(cohCount > 10 && cohesion > 0){
+				desiredX *= -0.25f;
+				desiredY *= -0.25f;
+			}
+			ax -= desiredX;
+			ay -= desiredY;
+		}
+		
+		/* ALIGNMENT RULE */
+		if(aliCount > 0){
+			float inv = 1f / aliCount;
+			float aliX = scratch.alignmentX * inv;
+			float aliY = scratch.alignmentY * inv;
+			scratch.rotation = (float) Math.toDegrees(Math.atan2(aliY, aliX));
+			ax += aliX * alignment;
+			ay += aliY * alignment;
+		}
+		
+		/* SEPARATION RULE */
+		if(sepCount > 0){
+			float inv = 1f / sepCount;
+			ax += (px - scratch.separationX * inv) * separation;
+			ay += (py - scratch.separationY * inv) * separation;
+		}
+		
+		scratch.steerX = ax;
+		scratch.steerY = ay;
+	}
+	
+	/**
+	 * Find the k nearest neighbours of a slot of the array storage for the
+	 * topological mode. Every boid closer than the search radius is offered, so
+	 * once k have been kept that are all inside it they are the k nearest. The
+	 * search stops growing once it has gone through every other boid, so a
+	 * straggler far from the flock doesn't keep widening it.
+	 * 
+	 * A boid with a neighbour cap keeps at most that many, and outside of the
+	 * topological mode the search stops growing at the interaction radius.
+	 * 
+	 * @param slot		the slot of the boid to find the neighbours of
+	 * @param scratch	the scratch state of the calling worker
+	 * @return			the nearest neighbours, owned by the scratch
+	 */
+	private NearestNeighbours findNearest(int slot, FlockScratch scratch){
+		FlockData data = _boiddata;
+		NearestNeighbours nearest = scratch.nearest;
+		int k = topologicalK > 0 ? Math.min(topologicalK, scratch.neighbourCap) : scratch.neighbourCap;
+		k = Math.min(k, data.size - 1);
+		float maxRadius = topologicalK > 0 ? Float.POSITIVE_INFINITY : radius;
+		nearest.begin(scratch, k);
+		if(k <= 0) return nearest;
+		
+		if(_index == null){
+			nearest.visitRange(0, data.size);
+			return nearest;
+		}
+		
+		float r = _nearestradius[slot];
+		if(!(r > 0)) r = radius;
+		r = Math.min(r, maxRadius);
+		for(int pass=0; ; pass++){
+			_index.forEachNearby(scratch.px, scratch.py, r, nearest);
+			if(nearest.count == k && nearest.farthestSq() < r * r) break;
+			if(pass == nearestPasses || r >= maxRadius) break;
+			
+			// Searching further out can't turn up anyone the whole flock didn't
+			if(nearest.offered >= data.size - 1) break;
+			
+			// Too few found, search further out
+			nearest.clear();
+			r = Math.min(r * nearestGrowth, maxRadius);
+		}
+		
+		_nearestradius[slot] = (float)Math.sqrt(nearest.farthestSq()) * nearestSlack;
+		return nearest;
+	}
+	
+	/**
+	 * The fork/join task of the parallel update, it splits the range of
+	 * chunks in half until it reaches a single chunk of slots to step,
+	 * or to apply the user set rules to
+	 */
+	private class StepTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		
+		private final int fromChunk;
+		private final int toChunk;
+		private final float elapsed;
+		private final boolean rules;
+		
+		StepTask(int fromChunk, int toChunk, float elapsed, boolean rules){
+			this.fromChunk = fromChunk;
+			this.toChunk = toChunk;
+			this.elapsed = elapsed;
+			this.rules = rules;
+		}
+		
+		@Override
+		protected void compute() {
+			if(toChunk - fromChunk > 1){
+				int mid = (fromChunk + toChunk) >>> 1;
+				invokeAll(new StepTask(fromChunk, mid, elapsed, rules), new StepTask(mid, toChunk, elapsed, rules));
+				return;
+			}
+			
+			int chunks = _chunkscratch.length;
+			int size = _boiddata.size;
+			int from = (int)((long)size * fromChunk / chunks);
+			int to = (int)((long)size * toChunk / chunks);
+			if(rules){
+				applyRules(from, to);
+				return;
+			}
+			
+			// Step every slot in this chunk with the chunk's own scratch state
+			FlockScratch scratch = _chunkscratch[fromChunk];
+			for(int i=from; i<to; i++){
+				step(i, elapsed, scratch);
+			}
+		}
+	}
+	
+	/**
+	 * Get the array storage of the flock
+	 * 
+	 * With the synchronous update enabled, the current columns are only swapped
+	 * at the end of an update so they can be read from another thread (ie. a render
+	 * thread) while the next tick is being computed.
+	 * 
+	 * @return		the flock's array storage
+	 */
+	public FlockData getData(){
+		return _boiddata;
+	}
+	
+	/**
+	 * Add a neighbour to the Reynold's Rule sums of a boid if it's within range
+	 * 
+	 * @param boid		the boid the rules are being applied too
+	 * @param ent		the neighbouring boid
+	 */
+	private void accumulate(Flockable boid, Flockable ent){
+		if(ent != boid){
+			
+			// TODO: Potentially create a 'cache' variable for this
+			Vector2D position = ent.getPosition();
+			if(isWrapEnabled){
+				// Measure to the closest image of the neighbour
+				float dx = MathUtils.nearestImage(ent.getPosition().x - boid.getPosition().x, wrapWidth);
+				float dy = MathUtils.nearestImage(ent.getPosition().y - boid.getPosition().y, wrapHeight);
+				position = _wrapimage.set(boid.getPosition().x + dx, boid.getPosition().y + dy);
+			}
+			float distSq = boid.getPosition().distSq(position);
+			
+			// Main Distance Check
+    		if (distSq < (radius*radius)) {
+    			//System.out.println("Dist: " + distSq);
+    			// added their pos to cohesion
+    			cohesionSum.add(position);
+    			cohesionCount++;
+
+    			// add their velocity to alignment
+    			alignmentSum.add(ent.getVelocity());
+    			alignmentCount++;
+
+    			// the separation distance will be smaller than cohere distance
+    			// birds will try and maintain a particular distance from each other
+    			if (distSq < separationDistSq) {
+    				separationSum.add(position);
+    				separationCount++;
+    				
+    				// This causes unwanted results in the flocking algorithm, so it is excluded for now (possible deletion)
+    				if (distSq < separationDistMinSq) { // avoid being too close to any particular bird
+    					separationSum.add(Vector2D.mult(boid.getPosition(), 10)); // PVector.mult(other,12) 
+    					separationCount += 10;
+    				} // separation minimum	    				
+    				
+    			} // separation dist check
+    		} // dist check
+		}
+	}
+	
+	/**
+	 * Visits the index on behalf of {@link #applyReynoldRules(Flockable)}, 
+	 * resolving each slot back to its boid
+	 */
+	private class ObjectVisitor implements NeighbourVisitor {
+		Flockable boid;
+		
+		// The blocks and slots visited, for the metrics listener
+		long cellsVisited, candidates;
+		
+		@Override
+		public void visit(int[] slots, int from, int to) {
+			cellsVisited++;
+			candidates += to - from;
+			Flockable[] boids = _boiddata.boids;
+			for(int i=from; i<to; i++){
+				accumulate(boid, boids[slots[i]]);
+			}
+		}
+	}
+	
 	/**
 	 * Limit the Velocity on the boid
 	 * @param boid
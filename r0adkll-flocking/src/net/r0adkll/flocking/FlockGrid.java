@@ -1,63 +1,50 @@
 package net.r0adkll.flocking;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
-import net.r0adkll.flocking.utils.Vector2D;
+public class FlockGrid extends AbstractGrid {
+	// The grid keeps track of which boid slots are in each cell, the per slot
+	// arrays keep track of where each boid is. Every boid knows its cell and its
+	// index in that cell's slot array, so it can be swap-removed in constant time.
 
-public class FlockGrid {
-	// The cells map keeps track of where each object is
-	// The grid list keeps track of which objects are in each cell
+	int[][] cellSlots;	// cellSlots[cell] = the slots in the cell, cell = cellX * cell_height + cellY
+	int[] cellCount;	// cellCount[cell] = the number of slots in the cell
 
-	Map<Flockable, Vector2D> cells = new HashMap<Flockable, Vector2D>(); // Key: Object object, Value: grid position... (x/scale,y/scale)
-	// holds the position of the object in the grid. This makes sure that the object gets removed and replaced each time
-	// it changes position in the grid.
+	int[] slotCell;		// slotCell[slot] = the cell the boid is in, or -1 if it's outside the grid
+	int[] slotIndex;	// slotIndex[slot] = where in its cell's slot array the boid is
+
+	// The flock storage used to turn slots back into boids
+	FlockData data;
 
-	List<Flockable> [][] grid; // grid[x/scale][y/scale] = List of objects
-	public int cellSize;
-	
-	public int cell_width = 0;
-	public int cell_height = 0;
-	
 	/**
 	 * Constructor
-	 * 
+	 *
 	 * @param cellSize		the size of the grid cells
-	 * @param objects		the array list of objects
 	 * @param width			the width of the bounds
 	 * @param height		the height of the bounds
+	 * @param data			the flock storage that hands out the boid slots
 	 */
-	FlockGrid (int cellSize, int width, int height) {
-		this.cellSize = cellSize;
-		this.cell_width = (width/cellSize)+1;
-		this.cell_height = (height/cellSize)+1;
-		
+	FlockGrid (int cellSize, int width, int height, FlockData data) {
+		super(cellSize, width, height);
+		this.data = data;
+
 		System.out.println("Cell Size[" + cell_width + "," + cell_height + "]");
-		
-		grid = new ArrayList[cell_width][cell_height];
 
-		// construct a list for each cell
-		for (int x = 0; x < grid.length; x++) {
-			for (int y = 0; y < grid[x].length; y++) {
-				grid[x][y] = new ArrayList<Flockable>(); // a list of objects for every cell
-			}
-		}
+		cellSlots = new int[cell_width * cell_height][];
+		cellCount = new int[cell_width * cell_height];
+		slotCell = new int[64];
+		slotIndex = new int[64];
 	}
-	
+
 	/**
 	 * Add a boid to the grid system
 	 * @param boid		the boid to add
 	 */
 	public void addBoid(Flockable boid){
-	
-		Vector2D cellPos = new Vector2D((int)(boid.getPosition().x / cellSize), (int)(boid.getPosition().y / cellSize));
-		cells.put(boid, cellPos);
-		grid[(int)cellPos.x][(int)cellPos.y].add(boid);
-		
+		addBoid(data.indexOf(boid), boid.getPosition().x, boid.getPosition().y);
 	}
-	
+
 	/**
 	 * Add a collection of boids
 	 * @param list
@@ -67,181 +54,184 @@ public class FlockGrid {
 			addBoid(object);
 		}
 	}
-	
+
+	/**
+	 * Add a boid slot to the grid system
+	 * @param slot		the slot of the boid to add
+	 * @param x			the x position of the boid
+	 * @param y			the y position of the boid
+	 */
+	public void addBoid(int slot, float x, float y){
+		if(slot >= slotCell.length){
+			int capacity = Math.max(slot + 1, slotCell.length * 2);
+			int[] cell = new int[capacity];
+			int[] index = new int[capacity];
+			System.arraycopy(slotCell, 0, cell, 0, slotCell.length);
+			System.arraycopy(slotIndex, 0, index, 0, slotIndex.length);
+			slotCell = cell;
+			slotIndex = index;
+		}
+
+		slotCell[slot] = -1;
+		insert(slot, cellOf(x, y));
+	}
+
 	/**
 	 * Remove Boid from Grid
 	 * @param boid
 	 */
 	public void removeBoid(Flockable boid){
-		
-		// Remove from Hashmap
-		Vector2D pos = cells.remove(boid);
-		int oldCellX = (int)pos.x;
-		int oldCellY = (int)pos.y;
-		Vector2D cPos = new Vector2D((int)(boid.getPosition().x/cellSize), (int)(boid.getPosition().y/cellSize));
-		int cellX = (int)cPos.x;
-		int cellY = (int)cPos.y;
-		
-		// safety check
-		if (cellX >= 0 && cellX < grid.length && cellY >= 0 && cellY < grid[cellX].length) {
-			
-			// Remove boid from current cell if exists
-			if(grid[cellX][cellY].contains(boid)){
-				grid[cellX][cellY].remove(boid);
-			}
-			
-			// Remove boid from cached cell if exists
-			if(grid[oldCellX][oldCellY].contains(boid)){
-				grid[oldCellX][oldCellY].remove(boid);
-			}
-			
-		}
+		removeBoid(data.indexOf(boid));
 	}
-	
-	
-	
-	/** 
+
+	/**
+	 * Remove a boid slot from the Grid
+	 * @param slot		the slot of the boid to remove
+	 */
+	public void removeBoid(int slot){
+		if(slot < 0) return;
+		unlink(slot);
+	}
+
+	/**
+	 * The flock storage moved the boid in one slot into another,
+	 * (ie. to fill the hole a removed boid left behind)
+	 *
+	 * @param from		the slot the boid used to be in
+	 * @param to		the slot the boid is in now
+	 */
+	public void moveSlot(int from, int to){
+		int cell = slotCell[from];
+		slotCell[to] = cell;
+		slotIndex[to] = slotIndex[from];
+		if(cell >= 0) cellSlots[cell][slotIndex[from]] = to;
+		slotCell[from] = -1;
+	}
+
+
+
+	/**
 	 * Update needs to be called on by each object after they update their position
 	 * this makes sure that the object is still in the correct cell
 	 */
 	public void update(Flockable object) {
-		// first check if it needs to be moved
-
-		// Find cell we stored it in
-		Vector2D oldCellPos = (Vector2D) cells.get(object);
-		int oldCellX = (int)oldCellPos.x;
-		int oldCellY = (int)oldCellPos.y;
-
-		// find cell it is in currently
-		int cellX = (int)(object.getPosition().x / cellSize);
-		int cellY = (int)(object.getPosition().y / cellSize);
+		update(data.indexOf(object), object.getPosition().x, object.getPosition().y);
+	}
 
-		// if they match, stop there
-		if (cellX == oldCellX && cellY == oldCellY)
+	/**
+	 * Update needs to be called for each boid slot after its position has changed,
+	 * this makes sure that the boid is still in the correct cell
+	 *
+	 * @param slot		the slot of the boid
+	 * @param x			the new x position of the boid
+	 * @param y			the new y position of the boid
+	 */
+	public void update(int slot, float x, float y) {
+		// find cell it is in currently, if it's the one we stored it in stop there
+		int cell = cellOf(x, y);
+		if (cell == slotCell[slot])
 			return;
 
-		// safety check
-		if (cellX >= 0 && cellX < grid.length && cellY >= 0 && cellY < grid[cellX].length) {
-			// if the grid the object is in now doesn't contain that object...
-			if (!grid[cellX][cellY].contains(object)) {
-				// add the object and remove the object from its former cell
-				grid[cellX][cellY].add(object);
-				grid[oldCellX][oldCellY].remove(object);
-				
-				// memorize which cell the object is in
-				Vector2D oldVal = cells.get(object);
-				if(oldVal != null){
-					oldVal.set(cellX, cellY);
-					cells.put(object, oldVal);
-				}else{
-					cells.put(object, new Vector2D(cellX, cellY));
-				}
-				//System.out.println("Object Changed Cells[" + oldCellX + "," + oldCellY + "] -to- [" + cellX + "," + cellY + "]");
-				
-			}
-		}
+		// remove the boid from its former cell and add it to the new one
+		unlink(slot);
+		insert(slot, cell);
 	}
 
 	/**
 	 * Find a list of nearby objects
-	 * goes through each cell adjacent to the current cell, and the current cell,
+	 * goes through each cell within the search radius of the position
 	 * and generates a list of objects contained in those cells
 	 */
 	private List<Flockable> nearBy = new ArrayList<Flockable>();
-	private int _size = 0;
 	public List<Flockable> nearByObjects (float x, float y) {
 		nearBy.clear();
-		
-		int cellX = (int)(x / cellSize);
-		int cellY = (int)(y / cellSize);
-
-		if (cellX >= 0 && cellX < grid.length) {
-			// center column
-			if (cellY >= 0 && cellY < grid[cellX].length) {
-				// middle
-				_size = grid[cellX][cellY].size();
-				for (int i=0; i<_size; i++){
-					nearBy.add(grid[cellX][cellY].get(i));
-					//System.out.println("Bird middle[" + cellX + "," + cellY + "]");
-				}
-				// top
-				// cellY+1 >= 0 can be assumed since cellY >= 0 is checked in this block
-				if (cellY+1 < grid[cellX].length) {
-					_size = grid[cellX][cellY + 1].size();
-					for (int i=0; i<_size; i++){
-						nearBy.add(grid[cellX][cellY + 1].get(i));
-						//System.out.println("Bird top[" + cellX + "," + (cellY+1) + "]");
-					}
-				}
-			}
-			// bottom
-			if (cellY-1 >= 0 && cellY-1 < grid[cellX].length) {
-				_size = grid[cellX][cellY - 1].size();
-				for (int i=0; i<_size; i++){
-					nearBy.add(grid[cellX][cellY - 1].get(i));
-					//System.out.println("Bird bottom[" + cellX + "," + (cellY-1) + "]");
-				}
-			}
+		return nearByObjects(x, y, nearBy);
+	}
 
-			// right column
-			if (cellX+1 < grid.length) {
-				if (cellY >= 0 && cellY < grid[cellX + 1].length) {
-					// middle right
-					_size = grid[cellX + 1][cellY].size();
-					for (int i=0; i<_size; i++){
-						nearBy.add(grid[cellX + 1][cellY].get(i));
-						//System.out.println("Bird middleright[" + (cellX + 1) + "," + cellY + "]");
-					}
-					if (cellY+1 < grid[cellX + 1].length) {
-						// top right
-						_size = grid[cellX + 1][cellY + 1].size();
-						for (int i=0; i<_size; i++){
-							nearBy.add(grid[cellX + 1][cellY + 1].get(i));
-							//System.out.println("Bird topright[" + (cellX + 1) + "," + (cellY+1) + "]");
-						}
-					}
-				}
-				if (cellY-1 >= 0 && cellY-1 < grid[cellX + 1].length) {
-					// bottom right
-					_size = grid[cellX + 1][cellY - 1].size();
-					for (int i=0; i<_size; i++){
-						nearBy.add(grid[cellX + 1][cellY - 1].get(i));
-						//System.out.println("Bird bottomright[" + (cellX + 1) + "," + (cellY-1) + "]");
-					}
-				}
-			}
+	/**
+	 * Find a list of nearby objects, collecting them into a caller supplied
+	 * list so that several threads can query the grid at once
+	 *
+	 * @param x			the x position to query around
+	 * @param y			the y position to query around
+	 * @param out		the list to add the nearby objects to
+	 * @return			the out list for chaining
+	 * @see #forEachNearby(float, float, NeighbourVisitor)
+	 */
+	public List<Flockable> nearByObjects (float x, float y, List<Flockable> out) {
+		forEachNearby(x, y, new ListVisitor(out));
+		return out;
+	}
+
+	@Override
+	protected void visitCell(int cellX, int cellY, NeighbourVisitor visitor) {
+		int cell = cellX * cell_height + cellY;
+		int count = cellCount[cell];
+		if (count > 0) visitor.visit(cellSlots[cell], 0, count);
+	}
+
+	/**
+	 * Collects the boids of the visited slots into a list
+	 */
+	private class ListVisitor implements NeighbourVisitor {
+		private final List<Flockable> out;
+
+		ListVisitor(List<Flockable> out){
+			this.out = out;
 		}
 
-		// left column
-		if (cellX-1 >= 0 && cellX-1 < grid.length) {
-			if (cellY >= 0 && cellY < grid[cellX - 1].length) {
-				// center left
-				_size = grid[cellX - 1][cellY].size();
-				for (int i=0; i<_size; i++){
-					nearBy.add(grid[cellX - 1][cellY].get(i));
-					//System.out.println("Bird centerleft[" + (cellX - 1) + "," + (cellY) + "]");
-				}
-				
-				// top left
-				if (cellY+1 < grid[cellX - 1].length) {
-					_size = grid[cellX - 1][cellY + 1].size();
-					for (int i=0; i<_size; i++){
-						nearBy.add(grid[cellX - 1][cellY + 1].get(i));
-						//System.out.println("Bird topleft[" + (cellX - 1) + "," + (cellY + 1) + "]");
-					}
-				}
-			}
-			if (cellY-1 >= 0 && cellY-1 < grid[cellX - 1].length) {
-				// bottom left
-				_size = grid[cellX - 1][cellY - 1].size();
-				for (int i=0; i<_size; i++){
-					nearBy.add(grid[cellX - 1][cellY - 1].get(i));
-					//System.out.println("Bird bottomleft[" + (cellX - 1) + "," + (cellY - 1) + "]");
-				}
+		@Override
+		public void visit(int[] slots, int from, int to) {
+			Flockable[] boids = data.boids;
+			for (int i=from; i<to; i++){
+				out.add(boids[slots[i]]);
 			}
 		}
-		
-		return nearBy;
+	}
+
+
+	/**************************************************************************
+	 * Helper Methods
+	 */
+
+	/**
+	 * Append a slot to the end of a cell
+	 */
+	private void insert(int slot, int cell){
+		slotCell[slot] = cell;
+		if(cell < 0) return;
+
+		int[] slots = cellSlots[cell];
+		int count = cellCount[cell];
+		if(slots == null){
+			slots = cellSlots[cell] = new int[4];
+		}else if(count == slots.length){
+			int[] grown = new int[count * 2];
+			System.arraycopy(slots, 0, grown, 0, count);
+			slots = cellSlots[cell] = grown;
+		}
+
+		slots[count] = slot;
+		slotIndex[slot] = count;
+		cellCount[cell] = count + 1;
+	}
+
+	/**
+	 * Remove a slot from its cell by moving the cell's last slot into its place
+	 */
+	private void unlink(int slot){
+		int cell = slotCell[slot];
+		if(cell < 0) return;
+
+		int[] slots = cellSlots[cell];
+		int index = slotIndex[slot];
+		int last = --cellCount[cell];
+		if(index != last){
+			int moved = slots[last];
+			slots[index] = moved;
+			slotIndex[moved] = index;
+		}
+		slotCell[slot] = -1;
 	}
 
 }
@@ -0,0 +1,100 @@
+package net.r0adkll.flocking;
+
+import java.util.Locale;
+
+/**
+ * The timings and counters of a single update of the engine, handed to the
+ * {@link FlockMetricsListener} set with {@link FlockEngine#setMetricsListener(FlockMetricsListener)}.
+ * 
+ * An update goes through these phases:
+ *  	1) Sync			- reading the boids into the array storage and writing them back out
+ *  	2) Rules		- the user set rules, applied to the whole flock at once
+ *  	3) Index		- preparing the spatial index and keeping it up to date,
+ *  					  along with the neighbour lists and the
+ *  					  symmetric pairs when they're enabled
+ *  	4) Steering		- querying the neighbours and summing up Reynold's Rules,
+ *  					  the two are fused in the visitor so they're timed together
+ *  	5) Integration	- applying the acceleration and moving the boid
+ * 
+ * Steering and integration are timed boid by boid and summed up, over
+ * every worker of a parallel update, so they add up to the thread time spent
+ * and can exceed {@link #stepNanos}, the wall time of stepping the flock.
+ * 
+ * The same instance is reused on every update, copy anything that has to be kept.
+ * 
+ * @author r0adkll
+ *
+ */
+public class FlockMetrics {
+
+	// The number of updates recorded since the listener was set
+	public long tick;
+	
+	// The number of boids updated
+	public int boids;
+	
+	// The number of those that were stepped, fewer than all of them when the level
+	// of detail mode or the time budget left some for a later update
+	public int stepped;
+	
+	// The number of threads the flock was stepped on
+	public int workers;
+	
+	// The wall time of the whole update
+	public long totalNanos;
+	
+	// The wall time of the phases that run once per update
+	public long syncNanos;
+	public long rulesNanos;
+	public long indexNanos;
+	public long stepNanos;
+	
+	// The time of the phases that run once per boid, summed over every boid
+	public long steeringNanos;
+	public long integrationNanos;
+	
+	// The cells (or tree leaves) handed over by the index, the slots in them
+	// and the neighbours within the interaction radius
+	public long cellsVisited;
+	public long candidates;
+	public long neighbours;
+	
+	// Whether the neighbour lists were built again this update
+	public boolean listsBuilt;
+	
+	
+	/**
+	 * Clear the timings and counters for the next update
+	 */
+	void reset(){
+		boids = stepped = 0;
+		workers = 1;
+		totalNanos = syncNanos = rulesNanos = indexNanos = stepNanos = 0;
+		steeringNanos = integrationNanos = 0;
+		cellsVisited = candidates = neighbours = 0;
+		listsBuilt = false;
+	}
+	
+	/**
+	 * Add up the per boid timings and counters of a worker
+	 * @param scratch	the scratch state of the worker
+	 */
+	void add(FlockScratch scratch){
+		stepped += scratch.stepped;
+		steeringNanos += scratch.steeringNanos;
+		integrationNanos += scratch.integrationNanos;
+		cellsVisited += scratch.cellsVisited;
+		candidates += scratch.candidates;
+		neighbours += scratch.neighbours;
+	}
+	
+	@Override
+	public String toString(){
+		return String.format(Locale.US, "tick %d: %d boids (%d stepped) in %.3f ms [sync %.3f, rules %.3f, index %.3f, step %.3f (steering %.3f, integration %.3f)]"
+				+ " cells %d, candidates %d, neighbours %d%s",
+				tick, boids, stepped, totalNanos / 1e6, syncNanos / 1e6, rulesNanos / 1e6, indexNanos / 1e6, stepNanos / 1e6,
+				steeringNanos / 1e6, integrationNanos / 1e6,
+				cellsVisited, candidates, neighbours, listsBuilt ? ", lists built" : "");
+	}
+	
+}
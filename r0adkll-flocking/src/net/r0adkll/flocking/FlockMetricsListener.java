@@ -0,0 +1,20 @@
+package net.r0adkll.flocking;
+
+/**
+ * Receives the timings and counters of every update of the engine,
+ * ie. to hand them to a profiler or a telemetry system.
+ * 
+ * @author r0adkll
+ *
+ */
+public interface FlockMetricsListener {
+
+	/**
+	 * Called on the updating thread at the end of every update
+	 * 
+	 * @param metrics	the metrics of the update, only valid for
+	 * 					the duration of the call
+	 */
+	public void onUpdate(FlockMetrics metrics);
+	
+}
@@ -0,0 +1,211 @@
+package net.r0adkll.flocking;
+
+import net.r0adkll.flocking.utils.MathUtils;
+
+/**
+ * The mutable working state that the engine needs while it steers
+ * a boid out of the array storage. Each worker of a parallel update
+ * owns one of these so that no two threads ever write to the same
+ * scratch variables.
+ *
+ * It's also the visitor handed to the grid, summing up the neighbours
+ * for Reynold's Rules as the grid walks its cells.
+ *
+ * @author r0adkll
+ *
+ */
+class FlockScratch implements NeighbourVisitor {
+
+	// The columns the neighbours are read from
+	float[] posX, posY, velX, velY;
+
+	// The boid being steered
+	int self;
+	float px, py;
+
+	// The distance thresholds, squared
+	float radiusSq;
+	float separationDistSq;
+	float separationDistMinSq;
+
+	// The size of the world when it wraps around, zero when it doesn't
+	float wrapWidth, wrapHeight;
+
+	// The Reynold's Rule sums, cohesion and alignment always count the same neighbours
+	float cohesionX, cohesionY;
+	float alignmentX, alignmentY;
+	float separationX, separationY;
+	int cohesionCount, alignmentCount, separationCount;
+
+	// The Reynold's Rule acceleration of the last steered boid
+	float steerX = 0;
+	float steerY = 0;
+
+	// The rotation of the last steered boid
+	float rotation = 0;
+
+	// The kernel summing up the ranges of slots, or null to sum them up here,
+	// and the sums handed to it
+	NeighbourKernel kernel;
+	private FlockData data;
+	private final float[] kernelSums = new float[6];
+	private final int[] kernelCounts = new int[2];
+
+	// The most neighbours the boid being steered flocks with, the nearest are kept
+	int neighbourCap = Integer.MAX_VALUE;
+
+	// The nearest neighbours of the last steered boid in the topological mode
+	NearestNeighbours nearest = new NearestNeighbours();
+
+	// Whether the engine is timing each boid for its metrics listener
+	boolean timed;
+
+	// The per boid timings and counters of this worker, see FlockMetrics.
+	// The visited blocks and slots are counted whether timed or not, it's cheaper than checking
+	long steeringNanos, integrationNanos;
+	long cellsVisited, candidates, neighbours;
+	int stepped;
+
+	/**
+	 * Reset the sums to start steering a boid
+	 *
+	 * @param data		the flock storage to read the neighbours from
+	 * @param slot		the slot of the boid being steered
+	 */
+	void begin(FlockData data, int slot, float radiusSq, float separationDistSq, float separationDistMinSq){
+		this.data = data;
+		posX = data.posX;
+		posY = data.posY;
+		velX = data.velX;
+		velY = data.velY;
+
+		self = slot;
+		px = posX[slot];
+		py = posY[slot];
+
+		this.radiusSq = radiusSq;
+		this.separationDistSq = separationDistSq;
+		this.separationDistMinSq = separationDistMinSq;
+
+		cohesionX = cohesionY = 0;
+		alignmentX = alignmentY = 0;
+		separationX = separationY = 0;
+		cohesionCount = alignmentCount = separationCount = 0;
+	}
+
+	/**
+	 * Clear the per boid timings and counters
+	 */
+	void resetMetrics(){
+		steeringNanos = integrationNanos = 0;
+		cellsVisited = candidates = neighbours = 0;
+		stepped = 0;
+	}
+
+	/**
+	 * Visit a block of slots, or a range of slots when there's no array, ie.
+	 * the whole flock when there's no grid. In a wrapped world each neighbour
+	 * is measured and summed at its closest image so a flock holds together
+	 * across the edges
+	 *
+	 * @param slots		the array holding the slots, or null to visit a range of slots
+	 * @param from		the first index
+	 * @param to		the index after the last one
+	 */
+	@Override
+	public void visit(int[] slots, int from, int to) {
+		cellsVisited++;
+		candidates += to - from;
+		boolean wrap = wrapWidth > 0;
+		
+		// Hand the whole blocks of a range over to the kernel, the rest is summed up here
+		if(slots == null && kernel != null && !wrap){
+			int block = kernel.getBlockSize();
+			int end = from + (to - from) / block * block;
+			if(end > from){
+				visitKernel(from, end);
+				from = end;
+			}
+		}
+
+		// Sum into locals and store them once the block is done
+		float px = this.px, py = this.py;
+		float cohX = cohesionX, cohY = cohesionY;
+		float aliX = alignmentX, aliY = alignmentY;
+		float sepX = separationX, sepY = separationY;
+		int cohCount = cohesionCount, sepCount = separationCount;
+
+		for(int i=from; i<to; i++){
+			int other = slots == null ? i : slots[i];
+			if(other == self) continue;
+
+			float ox = posX[other];
+			float oy = posY[other];
+			float dx = px - ox;
+			float dy = py - oy;
+			if(wrap){
+				dx = MathUtils.nearestImage(dx, wrapWidth);
+				dy = MathUtils.nearestImage(dy, wrapHeight);
+				ox = px - dx;
+				oy = py - dy;
+			}
+			float distSq = dx * dx + dy * dy;
+
+			// Main Distance Check
+			if(distSq < radiusSq){
+				cohX += ox;
+				cohY += oy;
+				cohCount++;
+
+				aliX += velX[other];
+				aliY += velY[other];
+
+				if(distSq < separationDistSq){
+					sepX += ox;
+					sepY += oy;
+					sepCount++;
+
+					// avoid being too close to any particular bird
+					if(distSq < separationDistMinSq){
+						sepX += px * 10;
+						sepY += py * 10;
+						sepCount += 10;
+					}
+				}
+			}
+		}
+
+		cohesionX = cohX; cohesionY = cohY;
+		alignmentX = aliX; alignmentY = aliY;
+		separationX = sepX; separationY = sepY;
+		cohesionCount = cohCount;
+		alignmentCount = cohCount;
+		separationCount = sepCount;
+	}
+
+	/**
+	 * Hand a range of slots over to the kernel along with the sums so far
+	 *
+	 * @param from		the first slot
+	 * @param to		the slot after the last one
+	 */
+	private void visitKernel(int from, int to){
+		float[] sums = kernelSums;
+		int[] counts = kernelCounts;
+		sums[0] = cohesionX; sums[1] = cohesionY;
+		sums[2] = alignmentX; sums[3] = alignmentY;
+		sums[4] = separationX; sums[5] = separationY;
+		counts[0] = cohesionCount;
+		counts[1] = separationCount;
+
+		kernel.accumulate(data, from, to, self, radiusSq, separationDistSq, separationDistMinSq, sums, counts);
+
+		cohesionX = sums[0]; cohesionY = sums[1];
+		alignmentX = sums[2]; alignmentY = sums[3];
+		separationX = sums[4]; separationY = sums[5];
+		cohesionCount = counts[0];
+		alignmentCount = counts[0];
+		separationCount = counts[1];
+	}
+
+}
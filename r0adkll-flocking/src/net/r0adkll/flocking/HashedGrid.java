@@ -0,0 +1,269 @@
+package net.r0adkll.flocking;
+
+import net.r0adkll.flocking.utils.LongIntMap;
+
+/**
+ * A uniform grid without bounds. Only the cells that hold boids exist,
+ * they are found through a hash map keyed by their packed cell coordinates
+ * and are handed back to a pool as soon as their last boid leaves, so the
+ * memory used follows the number of boids instead of the size of the world
+ * and a boid is tracked wherever it flies off to.
+ *
+ * Like the {@link FlockGrid} it's kept up to date boid by boid. A query
+ * covering more cells than the grid holds goes through the cells it holds
+ * instead of looking each one up, so a huge radius, ie. of the topological
+ * mode reaching a straggler, costs no more than the number of cells.
+ *
+ * @author r0adkll
+ *
+ */
+public class HashedGrid extends AbstractGrid {
+
+	/**************************************************************************
+	 * Constants
+	 */
+
+	// Cell coordinates are clamped to this range so that the packed keys stay
+	// unique and a query can't overflow while walking the cells
+	private static final int maxCell = 1 << 30;
+
+
+	/**************************************************************************
+	 * Variables
+	 */
+
+	// The id of every occupied cell, keyed by its packed cell coordinates
+	LongIntMap cellIds;
+
+	int[][] cellSlots;	// cellSlots[id] = the slots in the cell
+	int[] cellCount;	// cellCount[id] = the number of slots in the cell
+	long[] cellKeys;	// cellKeys[id] = the packed coordinates of the cell
+
+	// The ids of the cells that have been emptied, ready to be reused
+	int[] freeIds;
+	int freeCount;
+
+	// The number of cell ids ever handed out
+	int cellCapacity;
+
+	int[] slotCell;		// slotCell[slot] = the id of the cell the boid is in, or -1 if it isn't tracked
+	int[] slotIndex;	// slotIndex[slot] = where in its cell's slot array the boid is
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param cellSize		the size of the grid cells
+	 */
+	HashedGrid (int cellSize) {
+		super(cellSize);
+		minCellX = minCellY = -maxCell;
+		maxCellX = maxCellY = maxCell;
+
+		cellIds = new LongIntMap(64);
+		cellSlots = new int[64][];
+		cellCount = new int[64];
+		cellKeys = new long[64];
+		freeIds = new int[64];
+		slotCell = new int[64];
+		slotIndex = new int[64];
+	}
+
+	/**
+	 * Add a boid slot to the grid system
+	 * @param slot		the slot of the boid to add
+	 * @param x			the x position of the boid
+	 * @param y			the y position of the boid
+	 */
+	public void addBoid(int slot, float x, float y){
+		if(slot >= slotCell.length){
+			int capacity = Math.max(slot + 1, slotCell.length * 2);
+			int[] cell = new int[capacity];
+			int[] index = new int[capacity];
+			System.arraycopy(slotCell, 0, cell, 0, slotCell.length);
+			System.arraycopy(slotIndex, 0, index, 0, slotIndex.length);
+			slotCell = cell;
+			slotIndex = index;
+		}
+
+		insert(slot, keyOf(x, y));
+	}
+
+	/**
+	 * Remove a boid slot from the Grid
+	 * @param slot		the slot of the boid to remove
+	 */
+	public void removeBoid(int slot){
+		if(slot < 0) return;
+		unlink(slot);
+	}
+
+	/**
+	 * The flock storage moved the boid in one slot into another,
+	 * (ie. to fill the hole a removed boid left behind)
+	 *
+	 * @param from		the slot the boid used to be in
+	 * @param to		the slot the boid is in now
+	 */
+	public void moveSlot(int from, int to){
+		int id = slotCell[from];
+		slotCell[to] = id;
+		slotIndex[to] = slotIndex[from];
+		if(id >= 0) cellSlots[id][slotIndex[from]] = to;
+		slotCell[from] = -1;
+	}
+
+	/**
+	 * Update needs to be called for each boid slot after its position has changed,
+	 * this makes sure that the boid is still in the correct cell
+	 *
+	 * @param slot		the slot of the boid
+	 * @param x			the new x position of the boid
+	 * @param y			the new y position of the boid
+	 */
+	public void update(int slot, float x, float y) {
+		// find cell it is in currently, if it's the one we stored it in stop there
+		long key = keyOf(x, y);
+		int id = slotCell[slot];
+		if (id >= 0 && cellKeys[id] == key)
+			return;
+
+		// remove the boid from its former cell and add it to the new one
+		unlink(slot);
+		insert(slot, key);
+	}
+
+	/**
+	 * Get the number of cells that currently hold boids
+	 */
+	public int getOccupiedCells(){
+		return cellIds.size;
+	}
+
+	/**
+	 * Go through the cells the grid holds instead of looking up every cell
+	 * of the range when there are fewer of them
+	 */
+	@Override
+	void visitCellRange (int minX, int maxX, int minY, int maxY,
+			float x, float y, float radiusSq, NeighbourVisitor visitor) {
+		long cells = (long)(maxX - minX + 1) * (maxY - minY + 1);
+		if (cells <= cellCapacity) {
+			super.visitCellRange(minX, maxX, minY, maxY, x, y, radiusSq, visitor);
+			return;
+		}
+
+		for (int id = 0; id < cellCapacity; id++) {
+			int count = cellCount[id];
+			if (count == 0) continue;
+
+			long key = cellKeys[id];
+			int cellX = (int)(key >> 32), cellY = (int)key;
+			if (cellX < minX || cellX > maxX || cellY < minY || cellY > maxY) continue;
+			if (cellInRange(cellX, cellY, x, y, radiusSq)) visitor.visit(cellSlots[id], 0, count);
+		}
+	}
+
+	@Override
+	protected void visitCell(int cellX, int cellY, NeighbourVisitor visitor) {
+		int id = cellIds.get(pack(cellX, cellY), -1);
+		if (id >= 0) visitor.visit(cellSlots[id], 0, cellCount[id]);
+	}
+
+
+	/**************************************************************************
+	 * Helper Methods
+	 */
+
+	/**
+	 * Get the packed coordinates of the cell containing a position
+	 */
+	private long keyOf(float x, float y){
+		int cellX = Math.max(-maxCell, Math.min(cellCoord(x), maxCell));
+		int cellY = Math.max(-maxCell, Math.min(cellCoord(y), maxCell));
+		return pack(cellX, cellY);
+	}
+
+	/**
+	 * Pack two cell coordinates into a map key
+	 */
+	private static long pack(int cellX, int cellY){
+		return ((long)cellX << 32) | (cellY & 0xffffffffL);
+	}
+
+	/**
+	 * Append a slot to the end of a cell, taking a cell out of the
+	 * pool if there isn't one with that key yet
+	 */
+	private void insert(int slot, long key){
+		int id = cellIds.get(key, -1);
+		if(id < 0){
+			id = allocateCell();
+			cellKeys[id] = key;
+			cellIds.put(key, id);
+		}
+		slotCell[slot] = id;
+
+		int[] slots = cellSlots[id];
+		int count = cellCount[id];
+		if(slots == null){
+			slots = cellSlots[id] = new int[4];
+		}else if(count == slots.length){
+			int[] grown = new int[count * 2];
+			System.arraycopy(slots, 0, grown, 0, count);
+			slots = cellSlots[id] = grown;
+		}
+
+		slots[count] = slot;
+		slotIndex[slot] = count;
+		cellCount[id] = count + 1;
+	}
+
+	/**
+	 * Remove a slot from its cell by moving the cell's last slot into its place,
+	 * the cell goes back to the pool once it's empty
+	 */
+	private void unlink(int slot){
+		int id = slotCell[slot];
+		if(id < 0) return;
+
+		int[] slots = cellSlots[id];
+		int index = slotIndex[slot];
+		int last = --cellCount[id];
+		if(index != last){
+			int moved = slots[last];
+			slots[index] = moved;
+			slotIndex[moved] = index;
+		}
+		slotCell[slot] = -1;
+
+		if(last == 0){
+			cellIds.remove(cellKeys[id], -1);
+			freeIds[freeCount++] = id;
+		}
+	}
+
+	/**
+	 * Get an unused cell id, the slot array of a reused
+	 * cell is kept to save allocating a new one
+	 */
+	private int allocateCell(){
+		if(freeCount > 0) return freeIds[--freeCount];
+
+		if(cellCapacity == cellCount.length){
+			int capacity = cellCapacity * 2;
+			int[][] slots = new int[capacity][];
+			int[] count = new int[capacity];
+			long[] keys = new long[capacity];
+			System.arraycopy(cellSlots, 0, slots, 0, cellCapacity);
+			System.arraycopy(cellCount, 0, count, 0, cellCapacity);
+			System.arraycopy(cellKeys, 0, keys, 0, cellCapacity);
+			cellSlots = slots;
+			cellCount = count;
+			cellKeys = keys;
+			freeIds = new int[capacity];
+		}
+		return cellCapacity++;
+	}
+
+}
@@ -0,0 +1,302 @@
+package net.r0adkll.flocking;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import net.r0adkll.flocking.utils.MathUtils;
+
+/**
+ * A k-d tree of the boid slots that is bulk built from scratch every tick.
+ * The slots are split in half at the median of whichever axis their bounding
+ * box is widest along, until each half fits in a leaf, so the tree is always
+ * balanced however tightly the flock is bunched up. Every node keeps the
+ * tight bounding box of its boids, which lets queries skip the empty space
+ * between the balls of a clustered flock.
+ *
+ * The tree is laid out implicitly, node n has the children 2n+1 and 2n+2
+ * and the leaves are contiguous runs of one slot array, so a leaf is handed
+ * to the visitor as it is. On large flocks the upper levels are built in
+ * parallel on the engine's fork/join pool.
+ *
+ * @author r0adkll
+ *
+ */
+public class KdTree implements SpatialIndex {
+
+	/**************************************************************************
+	 * Constants
+	 */
+
+	// The most boids a leaf holds
+	private static final int leafSize = 8;
+
+	// Subtrees with fewer boids than this are built on the calling thread
+	private static final int parallelThreshold = 4096;
+
+
+	/**************************************************************************
+	 * Variables
+	 */
+
+	int[] order;			// the slots, grouped by leaf
+	int size;				// the number of slots in the tree
+
+	// The bounding box of the boids under each node
+	float[] minX, minY, maxX, maxY;
+
+	// The positions the tree is being built from
+	private float[] posX, posY;
+
+	// The radius that queries without one of their own search
+	public float searchRadius;
+
+
+	/**
+	 * Constructor
+	 */
+	public KdTree(){
+		order = new int[64];
+		minX = new float[16];
+		minY = new float[16];
+		maxX = new float[16];
+		maxY = new float[16];
+	}
+
+	/**
+	 * Rebuild the tree from the current positions of the flock
+	 *
+	 * @param data		the flock storage to index
+	 * @param pool		the pool to split the build across, or null to
+	 * 					build on the calling thread
+	 */
+	public void rebuild(FlockData data, ForkJoinPool pool){
+		int n = data.size;
+		if(order.length < n){
+			order = new int[Math.max(n, order.length * 2)];
+		}
+		int nodes = 2 * MathUtils.nextPowerOfTwo((n + leafSize - 1) / leafSize);
+		if(minX.length < nodes){
+			minX = new float[nodes];
+			minY = new float[nodes];
+			maxX = new float[nodes];
+			maxY = new float[nodes];
+		}
+
+		for(int i=0; i<n; i++){
+			order[i] = i;
+		}
+		size = n;
+		if(n == 0) return;
+
+		posX = data.posX;
+		posY = data.posY;
+		if(pool != null && n >= parallelThreshold){
+			pool.invoke(new BuildTask(0, 0, n));
+		}else{
+			build(0, 0, n);
+		}
+		posX = posY = null;
+	}
+
+	@Override
+	public void prepare(FlockData data, ForkJoinPool pool) {
+		rebuild(data, pool);
+	}
+
+	/**
+	 * The boids are picked up by the next rebuild,
+	 * the tree isn't kept up to date boid by boid
+	 */
+	@Override
+	public void addBoid(int slot, float x, float y) {
+	}
+
+	@Override
+	public void removeBoid(int slot) {
+	}
+
+	@Override
+	public void moveSlot(int from, int to) {
+	}
+
+	@Override
+	public void update(int slot, float x, float y) {
+	}
+
+	@Override
+	public void setSearchRadius(float radius) {
+		searchRadius = radius;
+	}
+
+	@Override
+	public void forEachNearby(float x, float y, NeighbourVisitor visitor) {
+		forEachNearby(x, y, searchRadius, visitor);
+	}
+
+	@Override
+	public void forEachNearby(float x, float y, float radius, NeighbourVisitor visitor) {
+		if(size > 0) nearby(0, 0, size, x, y, radius * radius, visitor);
+	}
+
+	@Override
+	public void forEachInRect(float x, float y, float width, float height, NeighbourVisitor visitor) {
+		if(size > 0) inRect(0, 0, size, x, y, x + width, y + height, visitor);
+	}
+
+	/**
+	 * The tree is built over every boid
+	 */
+	@Override
+	public boolean covers(float x, float y, float width, float height) {
+		return true;
+	}
+
+
+	/**************************************************************************
+	 * Build Methods
+	 */
+
+	/**
+	 * Build the subtree of a node over a range of the slot array
+	 */
+	private void build(int node, int from, int to){
+		if(split(node, from, to)){
+			int mid = (from + to) >>> 1;
+			build(2 * node + 1, from, mid);
+			build(2 * node + 2, mid, to);
+		}
+	}
+
+	/**
+	 * Measure the bounding box of a node and, unless it's a leaf, partition its
+	 * slots around the median of its widest axis
+	 *
+	 * @return		true if the node has children to build
+	 */
+	private boolean split(int node, int from, int to){
+		float[] posX = this.posX, posY = this.posY;
+		float x0 = Float.MAX_VALUE, y0 = Float.MAX_VALUE;
+		float x1 = -Float.MAX_VALUE, y1 = -Float.MAX_VALUE;
+		for(int i=from; i<to; i++){
+			int slot = order[i];
+			float x = posX[slot], y = posY[slot];
+			if(x < x0) x0 = x;
+			if(x > x1) x1 = x;
+			if(y < y0) y0 = y;
+			if(y > y1) y1 = y;
+		}
+		minX[node] = x0;
+		minY[node] = y0;
+		maxX[node] = x1;
+		maxY[node] = y1;
+
+		if(to - from <= leafSize) return false;
+
+		select(x1 - x0 >= y1 - y0 ? posX : posY, from, to - 1, (from + to) >>> 1);
+		return true;
+	}
+
+	/**
+	 * Reorder a range of the slot array so that the slot with the kth smallest
+	 * key is at k, with no greater key before it and no smaller key after it
+	 *
+	 * @param key		the coordinate to order the slots by
+	 * @param left		the first index of the range
+	 * @param right		the last index of the range
+	 * @param k			the index to place
+	 */
+	private void select(float[] key, int left, int right, int k){
+		int[] order = this.order;
+		while(left < right){
+			float pivot = key[order[k]];
+			int i = left, j = right;
+			do{
+				while(key[order[i]] < pivot) i++;
+				while(pivot < key[order[j]]) j--;
+				if(i <= j){
+					int swap = order[i];
+					order[i] = order[j];
+					order[j] = swap;
+					i++;
+					j--;
+				}
+			}while(i <= j);
+
+			if(j < k) left = i;
+			if(k < i) right = j;
+		}
+	}
+
+	/**
+	 * The fork/join task of the parallel build, it builds the node and hands its
+	 * children to new tasks until they are small enough to build in one go
+	 */
+	private class BuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int node;
+		private final int from;
+		private final int to;
+
+		BuildTask(int node, int from, int to){
+			this.node = node;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from < parallelThreshold){
+				build(node, from, to);
+				return;
+			}
+
+			if(split(node, from, to)){
+				int mid = (from + to) >>> 1;
+				invokeAll(new BuildTask(2 * node + 1, from, mid), new BuildTask(2 * node + 2, mid, to));
+			}
+		}
+	}
+
+
+	/**************************************************************************
+	 * Query Methods
+	 */
+
+	/**
+	 * Visit the leaves under a node whose bounding box is closer than the radius
+	 */
+	private void nearby(int node, int from, int to, float x, float y, float radiusSq, NeighbourVisitor visitor){
+		// cull the node if the closest point of its boids' bounding box is out of range
+		float dx = x < minX[node] ? minX[node] - x : (x > maxX[node] ? x - maxX[node] : 0);
+		float dy = y < minY[node] ? minY[node] - y : (y > maxY[node] ? y - maxY[node] : 0);
+		if(dx * dx + dy * dy >= radiusSq) return;
+
+		if(to - from <= leafSize){
+			visitor.visit(order, from, to);
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		nearby(2 * node + 1, from, mid, x, y, radiusSq, visitor);
+		nearby(2 * node + 2, mid, to, x, y, radiusSq, visitor);
+	}
+
+	/**
+	 * Visit the leaves under a node whose bounding box overlaps a rectangle
+	 */
+	private void inRect(int node, int from, int to, float left, float top, float right, float bottom, NeighbourVisitor visitor){
+		if(minX[node] > right || maxX[node] < left) return;
+		if(minY[node] > bottom || maxY[node] < top) return;
+
+		if(to - from <= leafSize){
+			visitor.visit(order, from, to);
+			return;
+		}
+
+		int mid = (from + to) >>> 1;
+		inRect(2 * node + 1, from, mid, left, top, right, bottom, visitor);
+		inRect(2 * node + 2, mid, to, left, top, right, bottom, visitor);
+	}
+
+}
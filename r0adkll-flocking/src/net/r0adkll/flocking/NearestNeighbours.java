@@ -0,0 +1,142 @@
+package net.r0adkll.flocking;
+
+import net.r0adkll.flocking.utils.MathUtils;
+
+/**
+ * Collects the k nearest boids of the boid being steered out of the slots a
+ * spatial index hands over. The candidates are kept in a bounded max-heap on
+ * their squared distance, so the farthest of the k kept so far is always on
+ * top and is the only one a closer candidate has to be compared with.
+ *
+ * Each {@link FlockScratch} owns one, so a parallel update never shares one
+ * between threads.
+ *
+ * @author r0adkll
+ *
+ */
+class NearestNeighbours implements NeighbourVisitor {
+
+	// The max-heap of the nearest boids found so far
+	int[] slots = new int[16];
+	float[] distSq = new float[16];
+	int count;
+
+	// The number of neighbours to keep
+	int k;
+
+	// The number of other boids offered since the search began or was cleared
+	int offered;
+
+	// The columns the candidates are read from
+	float[] posX, posY;
+
+	// The boid being steered
+	int self;
+	float px, py;
+
+	// The size of the world when it wraps around, zero when it doesn't
+	float wrapWidth, wrapHeight;
+
+	/**
+	 * Start looking for the nearest neighbours of the boid a scratch is steering
+	 *
+	 * @param scratch	the scratch of the boid being steered
+	 * @param k			the number of neighbours to keep
+	 */
+	void begin(FlockScratch scratch, int k){
+		posX = scratch.posX;
+		posY = scratch.posY;
+		self = scratch.self;
+		px = scratch.px;
+		py = scratch.py;
+		wrapWidth = scratch.wrapWidth;
+		wrapHeight = scratch.wrapHeight;
+
+		this.k = k;
+		if(slots.length < k){
+			slots = new int[k];
+			distSq = new float[k];
+		}
+		count = 0;
+		offered = 0;
+	}
+
+	/**
+	 * Forget the neighbours found so far, ie. to search again further out
+	 */
+	void clear(){
+		count = 0;
+		offered = 0;
+	}
+
+	/**
+	 * Get the squared distance of the farthest neighbour kept
+	 */
+	float farthestSq(){
+		return count == 0 ? 0 : distSq[0];
+	}
+
+	@Override
+	public void visit(int[] slots, int from, int to) {
+		for(int i=from; i<to; i++){
+			offer(slots[i]);
+		}
+	}
+
+	/**
+	 * Offer every slot in a range, ie. the whole flock when there's no index
+	 *
+	 * @param from		the first slot
+	 * @param to		the slot after the last one
+	 */
+	void visitRange(int from, int to){
+		for(int other=from; other<to; other++){
+			offer(other);
+		}
+	}
+
+	/**
+	 * Keep a boid if it's one of the k nearest found so far
+	 */
+	private void offer(int other){
+		if(other == self) return;
+		offered++;
+
+		float dx = px - posX[other];
+		float dy = py - posY[other];
+		if(wrapWidth > 0){
+			dx = MathUtils.nearestImage(dx, wrapWidth);
+			dy = MathUtils.nearestImage(dy, wrapHeight);
+		}
+		float d = dx * dx + dy * dy;
+
+		if(count < k){
+			// sift the new boid up from the bottom of the heap
+			int i = count++;
+			while(i > 0){
+				int parent = (i - 1) >> 1;
+				if(distSq[parent] >= d) break;
+				slots[i] = slots[parent];
+				distSq[i] = distSq[parent];
+				i = parent;
+			}
+			slots[i] = other;
+			distSq[i] = d;
+		}else if(d < distSq[0]){
+			// replace the farthest and sift it down
+			int i = 0;
+			while(true){
+				int child = 2 * i + 1;
+				if(child >= count) break;
+				if(child + 1 < count && distSq[child + 1] > distSq[child]) child++;
+				if(distSq[child] <= d) break;
+				slots[i] = slots[child];
+				distSq[i] = distSq[child];
+				i = child;
+			}
+			slots[i] = other;
+			distSq[i] = d;
+		}
+	}
+
+}
@@ -0,0 +1,58 @@
+package net.r0adkll.flocking;
+
+/**
+ * The inner loop of steering a boid out of the array storage, summing up
+ * Reynold's Rules over a contiguous range of candidate slots, ie. the whole
+ * flock when there's no spatial index. The engine sums the ranges up itself
+ * unless a kernel is set with {@link FlockEngine#enableNeighbourKernel(NeighbourKernel)},
+ * ie. the vector kernel of the r0adkll-flocking-vector project that measures
+ * many candidates at once with SIMD instructions.
+ *
+ * The blocks of slots a spatial index or the neighbour lists hand over are
+ * scattered over the flock storage and always summed up by the engine, the
+ * candidates would have to be gathered into the vector lanes one by one.
+ *
+ * A kernel must give the same sums as the engine, up to the rounding of adding
+ * them up in a different order:
+ *  	- every candidate other than the boid itself closer than the radius adds
+ *  	  its position to the cohesion sum and its velocity to the alignment sum
+ *  	- those closer than the separation distance also add their position to
+ *  	  the separation sum
+ *  	- those closer than the minimum separation distance add the boid's own
+ *  	  position to the separation sum 10 more times
+ *
+ * A kernel is called from every worker of a parallel update at once, so it
+ * must not keep any state of its own between calls. It's only handed ranges
+ * a whole number of {@link #getBlockSize()} long, the candidates left over at
+ * the end of a range are summed up by the engine.
+ *
+ * @author r0adkll
+ *
+ */
+public interface NeighbourKernel {
+
+	/**
+	 * Get the number of candidates the kernel sums up at once, ie. the
+	 * lanes of a vector
+	 */
+	public int getBlockSize();
+
+	/**
+	 * Sum up a range of candidate slots into the sums of a boid
+	 *
+	 * @param data					the flock storage to read the candidates from
+	 * @param from					the first candidate slot
+	 * @param to					the slot after the last candidate, a whole
+	 * 								number of blocks after the first
+	 * @param self					the slot of the boid being steered
+	 * @param radiusSq				the interaction radius, squared
+	 * @param separationDistSq		the separation distance, squared
+	 * @param separationDistMinSq	the minimum separation distance, squared
+	 * @param sums					the sums to add into, the cohesion x, y, alignment
+	 * 								x, y and separation x, y
+	 * @param counts				the counts to add into, the cohesion and separation
+	 */
+	public void accumulate(FlockData data, int from, int to, int self,
+			float radiusSq, float separationDistSq, float separationDistMinSq, float[] sums, int[] counts);
+
+}
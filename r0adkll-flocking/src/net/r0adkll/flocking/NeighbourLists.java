@@ -0,0 +1,183 @@
+package net.r0adkll.flocking;
+
+import net.r0adkll.flocking.utils.IntArray;
+import net.r0adkll.flocking.utils.MathUtils;
+
+/**
+ * Verlet neighbour lists, every slot's list holds the boids that were within
+ * the interaction radius plus a skin distance of it when the lists were built.
+ * As long as no boid has moved more than half the skin since, every boid within
+ * the interaction radius of a slot is still in its list, so the boids can be
+ * steered from the lists without asking the spatial index again.
+ *
+ * The lists are stored back to back in one flat buffer, the list of slot s
+ * runs from start[s] to start[s+1].
+ *
+ * @author r0adkll
+ *
+ */
+class NeighbourLists implements NeighbourVisitor {
+
+	// The lists of every slot, back to back
+	int[] start = new int[1];
+	IntArray list = new IntArray(256);
+
+	// The positions the lists were built at
+	float[] builtX = new float[0];
+	float[] builtY = new float[0];
+
+	// The number of slots and the distance the lists were built for,
+	// a size of -1 means they have to be built again
+	int size = -1;
+	float reach;
+
+	// The extra distance a list reaches out to
+	float skin;
+
+	// Whether the boids are steered from the lists this update, they can't
+	// be when the boids may move too far during the update
+	boolean usable;
+
+	// The build state
+	private float[] posX, posY;
+	private int self;
+	private float px, py;
+	private float reachSq;
+	private float wrapWidth, wrapHeight;
+
+	/**
+	 * Constructor
+	 * @param skin		the extra distance a list reaches out to
+	 */
+	NeighbourLists(float skin){
+		this.skin = skin;
+	}
+
+	/**
+	 * Throw the lists away, ie. after the flock's slots were moved around
+	 */
+	void invalidate(){
+		size = -1;
+	}
+
+	/**
+	 * Get ready for an update, building the lists again if any boid might miss
+	 * a neighbour within the interaction radius by the end of it. Each boid has
+	 * moved some distance since the lists were built and may move some more before
+	 * the last of its neighbours are steered, the two together can't reach half the
+	 * skin. If what's left of half the skin wouldn't even last until the next
+	 * update, the lists would be built again every update, so they aren't used
+	 * for it at all and the boids are steered through the index.
+	 *
+	 * @param data			the flock storage
+	 * @param index			the spatial index to find the neighbours through, or null to go through the whole flock
+	 * @param reach			the interaction radius plus the skin
+	 * @param step			the distance a boid may move from one update to the next
+	 * @param move			the distance every boid may move during the update
+	 * @param speed			the speed a boid may move at for the time in pending
+	 * @param pending		the time each slot has gone without being stepped, which it
+	 * 						makes up for when it is
+	 * @return				true if the lists were built again
+	 */
+	boolean refresh(FlockData data, SpatialIndex index, float reach, float step, float move, float speed, float[] pending,
+			float wrapWidth, float wrapHeight){
+		// The farthest any boid may move before the update is over
+		float catchUp = 0;
+		int n = Math.min(data.size, pending.length);
+		for(int i=0; i<n; i++){
+			catchUp = Math.max(catchUp, pending[i] * speed);
+		}
+
+		float limit = skin * 0.5f - move - catchUp;
+		usable = limit > step;
+		if(!usable || !isStale(data, reach, limit, wrapWidth, wrapHeight)) return false;
+
+		build(data, index, reach, wrapWidth, wrapHeight);
+		return true;
+	}
+
+	/**
+	 * Check if any boid has moved further than a limit since the lists were built
+	 */
+	private boolean isStale(FlockData data, float reach, float limit, float wrapWidth, float wrapHeight){
+		if(size != data.size || this.reach != reach) return true;
+
+		float limitSq = limit * limit;
+		float[] posX = data.posX, posY = data.posY;
+		for(int i=0; i<size; i++){
+			float dx = posX[i] - builtX[i];
+			float dy = posY[i] - builtY[i];
+			if(wrapWidth > 0){
+				dx = MathUtils.nearestImage(dx, wrapWidth);
+				dy = MathUtils.nearestImage(dy, wrapHeight);
+			}
+			if(dx * dx + dy * dy > limitSq) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Build the lists of every slot of the flock
+	 *
+	 * @param data			the flock storage
+	 * @param index			the spatial index to find the neighbours through, or null to go through the whole flock
+	 * @param reach			the interaction radius plus the skin
+	 */
+	private void build(FlockData data, SpatialIndex index, float reach, float wrapWidth, float wrapHeight){
+		int n = data.size;
+		if(start.length < n + 1) start = new int[data.boids.length + 1];
+		if(builtX.length < n){
+			builtX = new float[data.boids.length];
+			builtY = new float[data.boids.length];
+		}
+
+		posX = data.posX;
+		posY = data.posY;
+		reachSq = reach * reach;
+		this.wrapWidth = wrapWidth;
+		this.wrapHeight = wrapHeight;
+
+		list.clear();
+		for(int s=0; s<n; s++){
+			start[s] = list.size;
+			self = s;
+			px = builtX[s] = posX[s];
+			py = builtY[s] = posY[s];
+
+			if(index != null){
+				index.forEachNearby(px, py, reach, this);
+			}else{
+				for(int other=0; other<n; other++){
+					offer(other);
+				}
+			}
+		}
+		start[n] = list.size;
+
+		size = n;
+		this.reach = reach;
+	}
+
+	@Override
+	public void visit(int[] slots, int from, int to) {
+		for(int i=from; i<to; i++){
+			offer(slots[i]);
+		}
+	}
+
+	/**
+	 * Add a boid to the list being built if it's within reach
+	 */
+	private void offer(int other){
+		if(other == self) return;
+
+		float dx = px - posX[other];
+		float dy = py - posY[other];
+		if(wrapWidth > 0){
+			dx = MathUtils.nearestImage(dx, wrapWidth);
+			dy = MathUtils.nearestImage(dy, wrapHeight);
+		}
+		if(dx * dx + dy * dy < reachSq) list.add(other);
+	}
+
+}
@@ -0,0 +1,26 @@
+package net.r0adkll.flocking;
+
+/**
+ * The callback of a grid neighbour query. The grid hands over the boid
+ * slots of each cell it visits straight out of its own storage, nothing
+ * is copied, so the slots array must only be read and only for the
+ * duration of the call.
+ *
+ * Slots can be turned back into boids with {@link FlockData#boids}, see
+ * {@link FlockEngine#getData()}
+ *
+ * @author r0adkll
+ *
+ */
+public interface NeighbourVisitor {
+
+	/**
+	 * Visit a block of nearby boid slots
+	 *
+	 * @param slots		the array holding the slots
+	 * @param from		the index of the first slot in the block
+	 * @param to		the index after the last slot in the block
+	 */
+	public void visit(int[] slots, int from, int to);
+
+}
@@ -0,0 +1,505 @@
+package net.r0adkll.flocking;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+import net.r0adkll.flocking.utils.FRectangle;
+
+/**
+ * An adaptive quadtree of the boid slots, kept up to date boid by boid.
+ * A leaf is split into four once it holds more boids than its capacity and
+ * merged back when its siblings empty out, so the tree is deep where the
+ * flock is dense and shallow where it's sparse. When the flock bunches up
+ * into a few tight balls a neighbour query only goes through the small
+ * leaves around it, where a uniform grid would have to go through every
+ * boid in a crowded cell.
+ *
+ * The tree starts out covering its bounds and doubles its root towards any
+ * boid that flies out of them, so no boid stops being tracked.
+ *
+ * @author r0adkll
+ *
+ */
+public class Quadtree implements SpatialIndex {
+
+	/**************************************************************************
+	 * Constants
+	 */
+
+	// The number of boids a leaf holds before it's split
+	public static final int defaultLeafCapacity = 8;
+
+	// How many times the starting bounds can be halved, so a pile of boids
+	// sitting on the same spot doesn't split the tree forever
+	private static final int maxDepth = 16;
+
+	// How many times the root can double towards boids out of its bounds
+	private static final int maxGrowth = 24;
+
+
+	/**************************************************************************
+	 * Variables
+	 */
+
+	// The nodes, node 0 is the root and the four children of a node always
+	// have consecutive ids so that a node only needs to know the first one
+	float[] nodeX, nodeY;	// the top left corner of the node
+	float[] nodeSize;		// the width&height of the node
+	int[] nodeChild;		// nodeChild[node] = the first child of the node, or -1 for a leaf
+	int[] nodeParent;		// nodeParent[node] = the parent of the node, or -1 for the root
+	int[] nodeCount;		// nodeCount[node] = the number of boids in or under the node
+	int[][] nodeSlots;		// nodeSlots[leaf] = the slots in the leaf
+	int nodes;
+
+	// The first ids of the groups of four children that have been merged away
+	int[] freeGroups;
+	int freeGroupCount;
+
+	float[] slotX, slotY;	// the position of each boid when it was last added or updated
+	int[] slotNode;			// slotNode[slot] = the leaf the boid is in, or -1 if it isn't tracked
+	int[] slotIndex;		// slotIndex[slot] = where in its leaf's slot array the boid is
+
+	int leafCapacity;
+	float minNodeSize;
+	float maxRootSize;
+
+	// The radius that queries without one of their own search
+	public float searchRadius;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param bounds		the area the tree starts out covering
+	 */
+	public Quadtree(FRectangle bounds){
+		this(bounds, defaultLeafCapacity);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param bounds		the area the tree starts out covering
+	 * @param leafCapacity	the number of boids a leaf holds before it's split
+	 */
+	public Quadtree(FRectangle bounds, int leafCapacity){
+		this.leafCapacity = Math.max(leafCapacity, 1);
+
+		float size = Math.max(1, Math.max(bounds.getWidth(), bounds.getHeight()));
+		minNodeSize = size / (1 << maxDepth);
+		maxRootSize = size * (1 << maxGrowth);
+
+		nodeX = new float[16];
+		nodeY = new float[16];
+		nodeSize = new float[16];
+		nodeChild = new int[16];
+		nodeParent = new int[16];
+		nodeCount = new int[16];
+		nodeSlots = new int[16][];
+		freeGroups = new int[4];
+
+		slotX = new float[64];
+		slotY = new float[64];
+		slotNode = new int[64];
+		slotIndex = new int[64];
+
+		// The root
+		nodes = 1;
+		nodeX[0] = bounds.getX();
+		nodeY[0] = bounds.getY();
+		nodeSize[0] = size;
+		nodeChild[0] = -1;
+		nodeParent[0] = -1;
+	}
+
+
+	/**************************************************************************
+	 * Index Methods
+	 */
+
+	@Override
+	public void addBoid(int slot, float x, float y) {
+		if(slot >= slotNode.length){
+			int capacity = Math.max(slot + 1, slotNode.length * 2);
+			float[] px = new float[capacity];
+			float[] py = new float[capacity];
+			int[] node = new int[capacity];
+			int[] index = new int[capacity];
+			System.arraycopy(slotX, 0, px, 0, slotX.length);
+			System.arraycopy(slotY, 0, py, 0, slotY.length);
+			System.arraycopy(slotNode, 0, node, 0, slotNode.length);
+			System.arraycopy(slotIndex, 0, index, 0, slotIndex.length);
+			slotX = px;
+			slotY = py;
+			slotNode = node;
+			slotIndex = index;
+		}
+
+		slotX[slot] = x;
+		slotY[slot] = y;
+		insert(slot);
+	}
+
+	@Override
+	public void removeBoid(int slot) {
+		if(slot < 0) return;
+		int leaf = slotNode[slot];
+		if(leaf < 0) return;
+
+		unlink(slot);
+		collapse(nodeParent[leaf]);
+	}
+
+	@Override
+	public void moveSlot(int from, int to) {
+		int leaf = slotNode[from];
+		slotX[to] = slotX[from];
+		slotY[to] = slotY[from];
+		slotNode[to] = leaf;
+		slotIndex[to] = slotIndex[from];
+		if(leaf >= 0) nodeSlots[leaf][slotIndex[from]] = to;
+		slotNode[from] = -1;
+	}
+
+	@Override
+	public void update(int slot, float x, float y) {
+		slotX[slot] = x;
+		slotY[slot] = y;
+
+		// Still within its leaf, nothing to do
+		int leaf = slotNode[slot];
+		if(leaf >= 0 && contains(leaf, x, y)) return;
+
+		removeBoid(slot);
+		insert(slot);
+	}
+
+	/**
+	 * The tree is kept up to date boid by boid, there's nothing to prepare
+	 */
+	@Override
+	public void prepare(FlockData data, ForkJoinPool pool) {
+	}
+
+	@Override
+	public void setSearchRadius(float radius) {
+		searchRadius = radius;
+	}
+
+	@Override
+	public void forEachNearby(float x, float y, NeighbourVisitor visitor) {
+		forEachNearby(x, y, searchRadius, visitor);
+	}
+
+	@Override
+	public void forEachNearby(float x, float y, float radius, NeighbourVisitor visitor) {
+		nearby(0, x, y, radius * radius, visitor);
+	}
+
+	@Override
+	public void forEachInRect(float x, float y, float width, float height, NeighbourVisitor visitor) {
+		inRect(0, x, y, x + width, y + height, visitor);
+	}
+
+	/**
+	 * The root grows to cover every boid
+	 */
+	@Override
+	public boolean covers(float x, float y, float width, float height) {
+		return true;
+	}
+
+	/**
+	 * Get the depth of the deepest leaf, the root being at depth 0
+	 */
+	public int getDepth(){
+		return depth(0);
+	}
+
+
+	/**************************************************************************
+	 * Query Methods
+	 */
+
+	/**
+	 * Visit the leaves under a node that are closer than the radius
+	 */
+	private void nearby(int node, float x, float y, float radiusSq, NeighbourVisitor visitor){
+		int count = nodeCount[node];
+		if(count == 0) return;
+
+		// cull the node if its closest point is out of range
+		float dx = axisDistance(x, nodeX[node], nodeSize[node]);
+		float dy = axisDistance(y, nodeY[node], nodeSize[node]);
+		if(dx * dx + dy * dy >= radiusSq) return;
+
+		int child = nodeChild[node];
+		if(child < 0){
+			visitor.visit(nodeSlots[node], 0, count);
+			return;
+		}
+		for(int i=0; i<4; i++){
+			nearby(child + i, x, y, radiusSq, visitor);
+		}
+	}
+
+	/**
+	 * Visit the leaves under a node that overlap a rectangle
+	 */
+	private void inRect(int node, float left, float top, float right, float bottom, NeighbourVisitor visitor){
+		int count = nodeCount[node];
+		if(count == 0) return;
+
+		float size = nodeSize[node];
+		if(nodeX[node] > right || nodeX[node] + size < left) return;
+		if(nodeY[node] > bottom || nodeY[node] + size < top) return;
+
+		int child = nodeChild[node];
+		if(child < 0){
+			visitor.visit(nodeSlots[node], 0, count);
+			return;
+		}
+		for(int i=0; i<4; i++){
+			inRect(child + i, left, top, right, bottom, visitor);
+		}
+	}
+
+	private int depth(int node){
+		int child = nodeChild[node];
+		if(child < 0) return 0;
+
+		int depth = 0;
+		for(int i=0; i<4; i++){
+			depth = Math.max(depth, depth(child + i));
+		}
+		return depth + 1;
+	}
+
+
+	/**************************************************************************
+	 * Helper Methods
+	 */
+
+	/**
+	 * Put a slot into the leaf under its position, splitting the leaf if it
+	 * overflows
+	 */
+	private void insert(int slot){
+		float x = slotX[slot];
+		float y = slotY[slot];
+		grow(x, y);
+
+		int node = 0;
+		while(nodeChild[node] >= 0){
+			nodeCount[node]++;
+			node = childAt(node, x, y);
+		}
+		append(node, slot);
+		split(node);
+	}
+
+	/**
+	 * Take a slot out of its leaf by moving the leaf's last slot into its place
+	 */
+	private void unlink(int slot){
+		int leaf = slotNode[slot];
+		int[] slots = nodeSlots[leaf];
+		int index = slotIndex[slot];
+		int last = --nodeCount[leaf];
+		if(index != last){
+			int moved = slots[last];
+			slots[index] = moved;
+			slotIndex[moved] = index;
+		}
+		slotNode[slot] = -1;
+
+		for(int node = nodeParent[leaf]; node >= 0; node = nodeParent[node]){
+			nodeCount[node]--;
+		}
+	}
+
+	/**
+	 * Append a slot to the end of a leaf
+	 */
+	private void append(int leaf, int slot){
+		int[] slots = nodeSlots[leaf];
+		int count = nodeCount[leaf];
+		if(slots == null){
+			slots = nodeSlots[leaf] = new int[leafCapacity + 1];
+		}else if(count == slots.length){
+			int[] grown = new int[count * 2];
+			System.arraycopy(slots, 0, grown, 0, count);
+			slots = nodeSlots[leaf] = grown;
+		}
+
+		slots[count] = slot;
+		slotNode[slot] = leaf;
+		slotIndex[slot] = count;
+		nodeCount[leaf] = count + 1;
+	}
+
+	/**
+	 * Split a leaf that holds too many boids into four, and on down while
+	 * its boids all land in the same child
+	 */
+	private void split(int leaf){
+		int count = nodeCount[leaf];
+		float size = nodeSize[leaf];
+		if(count <= leafCapacity || size <= minNodeSize) return;
+
+		int group = allocateGroup();
+		float half = size * 0.5f;
+		for(int i=0; i<4; i++){
+			int child = group + i;
+			nodeX[child] = nodeX[leaf] + (i & 1) * half;
+			nodeY[child] = nodeY[leaf] + (i >> 1) * half;
+			nodeSize[child] = half;
+			nodeChild[child] = -1;
+			nodeParent[child] = leaf;
+			nodeCount[child] = 0;
+		}
+
+		// The leaf keeps its slot array for when it's merged again
+		nodeChild[leaf] = group;
+		int[] slots = nodeSlots[leaf];
+		for(int k=0; k<count; k++){
+			int slot = slots[k];
+			append(childAt(leaf, slotX[slot], slotY[slot]), slot);
+		}
+
+		for(int i=0; i<4; i++){
+			split(group + i);
+		}
+	}
+
+	/**
+	 * Merge the children of a node back into it, and on up the tree,
+	 * while they hold few enough boids
+	 */
+	private void collapse(int node){
+		for(; node >= 0; node = nodeParent[node]){
+			int group = nodeChild[node];
+			int count = nodeCount[node];
+			if(count > leafCapacity / 2) return;
+			for(int i=0; i<4; i++){
+				if(nodeChild[group + i] >= 0) return;
+			}
+
+			nodeChild[node] = -1;
+			nodeCount[node] = 0;
+			for(int i=0; i<4; i++){
+				int child = group + i;
+				int[] slots = nodeSlots[child];
+				for(int k=0; k<nodeCount[child]; k++){
+					append(node, slots[k]);
+				}
+				nodeCount[child] = 0;
+			}
+			freeGroup(group);
+		}
+	}
+
+	/**
+	 * Double the root towards a position until it's covered
+	 */
+	private void grow(float x, float y){
+		// NaN positions would never be covered
+		if(x != x || y != y) return;
+
+		while(!contains(0, x, y) && nodeSize[0] < maxRootSize){
+			float size = nodeSize[0];
+			float rootX = x < nodeX[0] ? nodeX[0] - size : nodeX[0];
+			float rootY = y < nodeY[0] ? nodeY[0] - size : nodeY[0];
+
+			int group = allocateGroup();
+			for(int i=0; i<4; i++){
+				int child = group + i;
+				nodeX[child] = rootX + (i & 1) * size;
+				nodeY[child] = rootY + (i >> 1) * size;
+				nodeSize[child] = size;
+				nodeChild[child] = -1;
+				nodeParent[child] = 0;
+				nodeCount[child] = 0;
+			}
+
+			// The old root becomes the quadrant of the new root it sits in
+			int old = group + (rootX < nodeX[0] ? 1 : 0) + (rootY < nodeY[0] ? 2 : 0);
+			int[] slots = nodeSlots[old];
+			nodeSlots[old] = nodeSlots[0];
+			nodeSlots[0] = slots;
+			nodeChild[old] = nodeChild[0];
+			nodeCount[old] = nodeCount[0];
+
+			int child = nodeChild[old];
+			if(child >= 0){
+				for(int i=0; i<4; i++){
+					nodeParent[child + i] = old;
+				}
+			}else{
+				for(int k=0; k<nodeCount[old]; k++){
+					slotNode[nodeSlots[old][k]] = old;
+				}
+			}
+
+			nodeX[0] = rootX;
+			nodeY[0] = rootY;
+			nodeSize[0] = size * 2;
+			nodeChild[0] = group;
+		}
+	}
+
+	/**
+	 * Get the child of a node that a position falls in
+	 */
+	private int childAt(int node, float x, float y){
+		float half = nodeSize[node] * 0.5f;
+		int quadrant = (x >= nodeX[node] + half ? 1 : 0) + (y >= nodeY[node] + half ? 2 : 0);
+		return nodeChild[node] + quadrant;
+	}
+
+	private boolean contains(int node, float x, float y){
+		float size = nodeSize[node];
+		return x >= nodeX[node] && x < nodeX[node] + size && y >= nodeY[node] && y < nodeY[node] + size;
+	}
+
+	/**
+	 * Get the distance along one axis from a position to the closest edge
+	 * of a node, zero when the position is within the node's span
+	 */
+	private static float axisDistance(float v, float min, float size){
+		if (v < min) return min - v;
+		float max = min + size;
+		if (v > max) return v - max;
+		return 0;
+	}
+
+	/**
+	 * Get the first id of four unused consecutive nodes
+	 */
+	private int allocateGroup(){
+		if(freeGroupCount > 0) return freeGroups[--freeGroupCount];
+
+		if(nodes + 4 > nodeChild.length){
+			int capacity = nodeChild.length * 2;
+			nodeX = Arrays.copyOf(nodeX, capacity);
+			nodeY = Arrays.copyOf(nodeY, capacity);
+			nodeSize = Arrays.copyOf(nodeSize, capacity);
+			nodeChild = Arrays.copyOf(nodeChild, capacity);
+			nodeParent = Arrays.copyOf(nodeParent, capacity);
+			nodeCount = Arrays.copyOf(nodeCount, capacity);
+			nodeSlots = Arrays.copyOf(nodeSlots, capacity);
+		}
+
+		int group = nodes;
+		nodes += 4;
+		return group;
+	}
+
+	private void freeGroup(int group){
+		if(freeGroupCount == freeGroups.length){
+			freeGroups = Arrays.copyOf(freeGroups, freeGroupCount * 2);
+		}
+		freeGroups[freeGroupCount++] = group;
+	}
+
+}
@@ -0,0 +1,110 @@
+package net.r0adkll.flocking;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * An index of where the boids of a flock are, used by the engine to find
+ * the neighbours of a boid without going through the whole flock. Boids are
+ * identified by their slot in the engine's {@link FlockData}.
+ *
+ * Indexes are either kept up to date boid by boid through the add, remove
+ * and update calls, or rebuilt from the flock storage in {@link #prepare(FlockData, ForkJoinPool)}
+ * at the start of every update, in which case the other calls can be ignored.
+ *
+ * Queries don't modify the index, so any number of threads may query it at
+ * once as long as it isn't being changed.
+ *
+ * @author r0adkll
+ *
+ */
+public interface SpatialIndex {
+
+	/**
+	 * Add a boid slot to the index
+	 * @param slot		the slot of the boid to add
+	 * @param x			the x position of the boid
+	 * @param y			the y position of the boid
+	 */
+	public void addBoid(int slot, float x, float y);
+
+	/**
+	 * Remove a boid slot from the index
+	 * @param slot		the slot of the boid to remove
+	 */
+	public void removeBoid(int slot);
+
+	/**
+	 * The flock storage moved the boid in one slot into another,
+	 * (ie. to fill the hole a removed boid left behind)
+	 *
+	 * @param from		the slot the boid used to be in
+	 * @param to		the slot the boid is in now
+	 */
+	public void moveSlot(int from, int to);
+
+	/**
+	 * Update the position of a boid slot after it has moved
+	 * @param slot		the slot of the boid
+	 * @param x			the new x position of the boid
+	 * @param y			the new y position of the boid
+	 */
+	public void update(int slot, float x, float y);
+
+	/**
+	 * Called by the engine at the start of every update, once the flock storage
+	 * holds the current positions and before the index is queried
+	 *
+	 * @param data		the flock storage
+	 * @param pool		the pool of the parallel update, or null
+	 */
+	public void prepare(FlockData data, ForkJoinPool pool);
+
+	/**
+	 * Set the radius that queries without one of their own search
+	 * @param radius	the search radius
+	 */
+	public void setSearchRadius(float radius);
+
+	/**
+	 * Visit the slots of the boids within the search radius
+	 * @see #forEachNearby(float, float, float, NeighbourVisitor)
+	 */
+	public void forEachNearby(float x, float y, NeighbourVisitor visitor);
+
+	/**
+	 * Visit the slots of the nearby boids, every boid closer than the radius is
+	 * handed to the visitor exactly once, along with some that may be farther
+	 *
+	 * @param x			the x position to query around
+	 * @param y			the y position to query around
+	 * @param radius	the radius to query
+	 * @param visitor	the visitor to hand the nearby slots to
+	 */
+	public void forEachNearby(float x, float y, float radius, NeighbourVisitor visitor);
+
+	/**
+	 * Visit the slots of the boids in a rectangle, every boid inside it is
+	 * handed to the visitor exactly once, along with some that may be outside
+	 *
+	 * @param x			the left edge of the rectangle
+	 * @param y			the top edge of the rectangle
+	 * @param width		the width of the rectangle
+	 * @param height	the height of the rectangle
+	 * @param visitor	the visitor to hand the slots to
+	 */
+	public void forEachInRect(float x, float y, float width, float height, NeighbourVisitor visitor);
+
+	/**
+	 * Check if every boid positioned inside a rectangle is tracked by the index,
+	 * a bounded index loses track of the boids that fly out of its bounds
+	 *
+	 * @param x			the left edge of the rectangle
+	 * @param y			the top edge of the rectangle
+	 * @param width		the width of the rectangle
+	 * @param height	the height of the rectangle
+	 * @return			true if {@link #forEachInRect(float, float, float, float, NeighbourVisitor)}
+	 * 					hands over every boid inside the rectangle
+	 */
+	public boolean covers(float x, float y, float width, float height);
+
+}
@@ -0,0 +1,309 @@
+package net.r0adkll.flocking;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Sums up Reynold's Rules for the whole flock a pair of boids at a time
+ * instead of a boid at a time. Each cell of a {@link CompactGrid} is paired
+ * with itself and with only half of the cells around it, the other half pair
+ * with it from their side, so the distance between two boids is measured once
+ * and added into the sums of both. That's half the distance checks of steering
+ * every boid on its own.
+ *
+ * Every boid reads the other's state and writes its own sums, so this only
+ * fits the synchronous update, where nothing moves until the whole flock is
+ * stepped. The columns of cells are split into strips that are summed in two
+ * passes, first every even strip then every odd one, so no two strips of a
+ * parallel pass write to the same boid. The strips don't depend on the size of
+ * the pool, so the sums come out the same however many threads add them up.
+ *
+ * @author r0adkll
+ *
+ */
+class SymmetricPairs {
+
+	/**************************************************************************
+	 * Constants
+	 */
+
+	// The narrowest strip of cell columns
+	private static final int minStripWidth = 4;
+
+
+	/**************************************************************************
+	 * Variables
+	 */
+
+	// The sums of every slot, as the scratch keeps them for one boid
+	float[] cohesionX = new float[0], cohesionY = new float[0];
+	float[] alignmentX = new float[0], alignmentY = new float[0];
+	float[] separationX = new float[0], separationY = new float[0];
+	int[] cohesionCount = new int[0], separationCount = new int[0];
+
+	// Whether the sums of this update were added up, the boids
+	// are steered one by one when they couldn't be
+	boolean usable;
+
+	// The pairs of cells and the pairs of boids in them the last pass went
+	// through, for the metrics listener, and the counts of each strip
+	long cellsVisited, candidates;
+	private long[] stripCells = new long[0], stripCandidates = new long[0];
+
+	// The state of the pass in progress
+	private CompactGrid grid;
+	private float[] posX, posY, velX, velY;
+	private float radiusSq, separationDistSq, separationDistMinSq;
+	private int reach;
+	private int stripWidth;
+
+
+	/**
+	 * Add up the sums of every boid in the grid
+	 *
+	 * @param data					the flock storage
+	 * @param grid					the grid, rebuilt from the current positions
+	 * @param radius				the interaction radius
+	 * @param pool					the pool to split the strips across, or null
+	 * 								to add them up on the calling thread
+	 */
+	void accumulate(FlockData data, CompactGrid grid, float radius, float separationDistSq, float separationDistMinSq,
+			ForkJoinPool pool){
+		int size = data.size;
+		if(cohesionX.length < size){
+			int capacity = data.boids.length;
+			cohesionX = new float[capacity];
+			cohesionY = new float[capacity];
+			alignmentX = new float[capacity];
+			alignmentY = new float[capacity];
+			separationX = new float[capacity];
+			separationY = new float[capacity];
+			cohesionCount = new int[capacity];
+			separationCount = new int[capacity];
+		}
+		Arrays.fill(cohesionX, 0, size, 0);
+		Arrays.fill(cohesionY, 0, size, 0);
+		Arrays.fill(alignmentX, 0, size, 0);
+		Arrays.fill(alignmentY, 0, size, 0);
+		Arrays.fill(separationX, 0, size, 0);
+		Arrays.fill(separationY, 0, size, 0);
+		Arrays.fill(cohesionCount, 0, size, 0);
+		Arrays.fill(separationCount, 0, size, 0);
+
+		this.grid = grid;
+		posX = data.posX;
+		posY = data.posY;
+		velX = data.velX;
+		velY = data.velY;
+		radiusSq = radius * radius;
+		this.separationDistSq = separationDistSq;
+		this.separationDistMinSq = separationDistMinSq;
+
+		// The cells as far away as the radius reaches, and strips at least
+		// that wide so a strip only ever writes into the next one
+		reach = Math.max(1, (int)Math.ceil(radius / grid.cellSize));
+		stripWidth = Math.max(reach, minStripWidth);
+		int strips = (grid.cell_width + stripWidth - 1) / stripWidth;
+		if(stripCells.length < strips){
+			stripCells = new long[strips];
+			stripCandidates = new long[strips];
+		}
+
+		for(int parity=0; parity<2; parity++){
+			int count = (strips - parity + 1) / 2;
+			if(pool != null && count > 1){
+				pool.invoke(new StripTask(parity, 0, count));
+			}else{
+				for(int k=0; k<count; k++){
+					strip(parity + 2 * k);
+				}
+			}
+		}
+
+		cellsVisited = candidates = 0;
+		for(int s=0; s<strips; s++){
+			cellsVisited += stripCells[s];
+			candidates += stripCandidates[s];
+		}
+
+		this.grid = null;
+		posX = posY = velX = velY = null;
+		usable = true;
+	}
+
+	/**
+	 * Hand the sums of a slot to the scratch steering it
+	 *
+	 * @param slot			the slot of the boid
+	 * @param scratch		the scratch state, already begun for the slot
+	 * @return				false if the boid is outside the grid, its
+	 * 						neighbours then have to be found on its own
+	 */
+	boolean load(int slot, CompactGrid grid, FlockScratch scratch){
+		if(grid.slotCell[slot] < 0) return false;
+
+		scratch.cohesionX = cohesionX[slot];
+		scratch.cohesionY = cohesionY[slot];
+		scratch.alignmentX = alignmentX[slot];
+		scratch.alignmentY = alignmentY[slot];
+		scratch.separationX = separationX[slot];
+		scratch.separationY = separationY[slot];
+		scratch.cohesionCount = cohesionCount[slot];
+		scratch.alignmentCount = cohesionCount[slot];
+		scratch.separationCount = separationCount[slot];
+		return true;
+	}
+
+
+	/**************************************************************************
+	 * Pair Methods
+	 */
+
+	/**
+	 * Pair every cell of a strip of columns with itself and with the half
+	 * of the cells around it that come after it
+	 */
+	private void strip(int strip){
+		int[] cellStart = grid.cellStart;
+		int width = grid.cell_width, height = grid.cell_height;
+		int fromX = strip * stripWidth;
+		int toX = Math.min(fromX + stripWidth, width);
+		float cellSize = grid.cellSize;
+		long cells = 0, candidates = 0;
+
+		for(int cx=fromX; cx<toX; cx++){
+			for(int cy=0; cy<height; cy++){
+				int cell = cx * height + cy;
+				int start = cellStart[cell], end = cellStart[cell + 1];
+				if(start == end) continue;
+
+				pairWithin(start, end);
+				cells++;
+				candidates += (long)(end - start) * (end - start - 1) / 2;
+
+				// The cells below in the same column, then every cell of the columns to the right
+				for(int dx=0; dx<=reach && cx + dx < width; dx++){
+					float gapX = Math.max(dx - 1, 0) * cellSize;
+					for(int dy=(dx == 0 ? 1 : -reach); dy<=reach; dy++){
+						int ny = cy + dy;
+						if(ny < 0 || ny >= height) continue;
+
+						// Skip the cells too far away for any of their boids to be in range
+						float gapY = Math.max(Math.abs(dy) - 1, 0) * cellSize;
+						if(gapX * gapX + gapY * gapY >= radiusSq) continue;
+
+						int other = (cx + dx) * height + ny;
+						int otherStart = cellStart[other], otherEnd = cellStart[other + 1];
+						if(otherStart == otherEnd) continue;
+
+						pairAcross(start, end, otherStart, otherEnd);
+						cells++;
+						candidates += (long)(end - start) * (otherEnd - otherStart);
+					}
+				}
+			}
+		}
+
+		// Each strip counts into its own slot so the parallel strips don't share one
+		stripCells[strip] = cells;
+		stripCandidates[strip] = candidates;
+	}
+
+	/**
+	 * Pair every boid of a cell with the ones after it in the cell
+	 */
+	private void pairWithin(int start, int end){
+		int[] slots = grid.cellSlots;
+		for(int a=start; a<end; a++){
+			int i = slots[a];
+			for(int b=a + 1; b<end; b++){
+				pair(i, slots[b]);
+			}
+		}
+	}
+
+	/**
+	 * Pair every boid of a cell with every boid of another cell
+	 */
+	private void pairAcross(int start, int end, int otherStart, int otherEnd){
+		int[] slots = grid.cellSlots;
+		for(int a=start; a<end; a++){
+			int i = slots[a];
+			for(int b=otherStart; b<otherEnd; b++){
+				pair(i, slots[b]);
+			}
+		}
+	}
+
+	/**
+	 * Measure the distance between two boids once, and if they're neighbours
+	 * add each into the other's sums
+	 */
+	private void pair(int i, int j){
+		float dx = posX[i] - posX[j];
+		float dy = posY[i] - posY[j];
+		float distSq = dx * dx + dy * dy;
+
+		// Main Distance Check
+		if(distSq >= radiusSq) return;
+
+		add(i, j, distSq);
+		add(j, i, distSq);
+	}
+
+	/**
+	 * Add a neighbour within the radius into the sums of a boid the way the scratch would
+	 */
+	private void add(int slot, int other, float distSq){
+		float ox = posX[other], oy = posY[other];
+		cohesionX[slot] += ox;
+		cohesionY[slot] += oy;
+		cohesionCount[slot]++;
+
+		alignmentX[slot] += velX[other];
+		alignmentY[slot] += velY[other];
+
+		if(distSq < separationDistSq){
+			separationX[slot] += ox;
+			separationY[slot] += oy;
+			separationCount[slot]++;
+
+			// avoid being too close to any particular bird
+			if(distSq < separationDistMinSq){
+				separationX[slot] += posX[slot] * 10;
+				separationY[slot] += posY[slot] * 10;
+				separationCount[slot] += 10;
+			}
+		}
+	}
+
+	/**
+	 * The fork/join task of a parallel pass, it splits the strips of one
+	 * parity in half until it reaches a single strip to add up
+	 */
+	private class StripTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final int parity;
+		private final int from;
+		private final int to;
+
+		StripTask(int parity, int from, int to){
+			this.parity = parity;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if(to - from > 1){
+				int mid = (from + to) >>> 1;
+				invokeAll(new StripTask(parity, from, mid), new StripTask(parity, mid, to));
+				return;
+			}
+			strip(parity + 2 * from);
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package net.r0adkll.flocking.rules;
 
+import net.r0adkll.flocking.FlockData;
 import net.r0adkll.flocking.Flockable;
 import net.r0adkll.flocking.utils.Vector2D;
 
@@ -7,10 +8,14 @@ import net.r0adkll.flocking.utils.Vector2D;
  * This is the base model class for creating
  * Flocking rules to be applyed by the algorithms
  * 
+ * Rules are written boid by boid, the batch contract of {@link BatchRule}
+ * is adapted to call {@link #applyRule(Flockable)} for every boid of the range.
+ * Rules that run over large flocks should override the batch method as well.
+ * 
  * @author r0adkll
  *
  */
-public abstract class AbstractRule {
+public abstract class AbstractRule implements BatchRule {
 
 	
 	/**
@@ -21,4 +26,37 @@ public abstract class AbstractRule {
 	 */
 	public abstract Vector2D applyRule(Flockable boid);
 	
+	@Override
+	public void beginTick(FlockData data) {
+	}
+	
+	/**
+	 * Apply the rule to every boid of the range through {@link #applyRule(Flockable)},
+	 * the boids are in sync with their slots and any move the rule makes to one
+	 * is added to its position columns
+	 */
+	@Override
+	public void applyRule(FlockData data, int from, int to, float[] accX, float[] accY) {
+		Flockable[] boids = data.boids;
+		for(int i=from; i<to; i++){
+			Flockable boid = boids[i];
+			Vector2D pos = boid.getPosition();
+			float x = pos.x, y = pos.y;
+			
+			Vector2D result = applyRule(boid);
+			if(result != null){
+				accX[i] += result.x;
+				accY[i] += result.y;
+			}
+			
+			// Rules are free to move the boid
+			data.posX[i] += pos.x - x;
+			data.posY[i] += pos.y - y;
+		}
+	}
+	
+	@Override
+	public void endTick() {
+	}
+	
 }
@@ -0,0 +1,50 @@
+package net.r0adkll.flocking.rules;
+
+import net.r0adkll.flocking.FlockData;
+
+/**
+ * A flocking rule that is applied to a whole range of the flock at once,
+ * straight out of the engine's array storage. It's called once per range
+ * instead of once per boid, and adds its acceleration into the engine's
+ * acceleration columns rather than returning a new vector for every boid.
+ * 
+ * Every update the engine calls {@link #beginTick(FlockData)}, then applies
+ * the rule to the flock in one or more ranges, then calls {@link #endTick()}.
+ * The ranges never overlap and with the parallel update enabled they are applied
+ * from several threads at once, so a rule must only write to the slots of the
+ * range it was handed. All the rules are applied before any boid is steered,
+ * so a rule may move the boids of its range by writing their position columns.
+ * 
+ * See {@link AbstractRule} for rules that are written boid by boid.
+ * 
+ * @author r0adkll
+ *
+ */
+public interface BatchRule {
+
+	/**
+	 * Called on the updating thread at the start of every update, before the
+	 * rule is applied to any range of the flock
+	 * 
+	 * @param data		the flock storage
+	 */
+	public void beginTick(FlockData data);
+	
+	/**
+	 * Apply the rule to a range of slots of the flock
+	 * 
+	 * @param data		the flock storage, holding the current state of every boid
+	 * @param from		the first slot to apply the rule to
+	 * @param to		the slot after the last one
+	 * @param accX		the x acceleration of each slot, to add the rule's into
+	 * @param accY		the y acceleration of each slot, to add the rule's into
+	 */
+	public void applyRule(FlockData data, int from, int to, float[] accX, float[] accY);
+	
+	/**
+	 * Called on the updating thread at the end of every update, once the
+	 * rule has been applied to the whole flock
+	 */
+	public void endTick();
+	
+}
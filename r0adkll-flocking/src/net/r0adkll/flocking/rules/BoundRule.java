@@ -1,5 +1,6 @@
 package net.r0adkll.flocking.rules;
 
+import net.r0adkll.flocking.FlockData;
 import net.r0adkll.flocking.Flockable;
 import net.r0adkll.flocking.utils.FRectangle;
 import net.r0adkll.flocking.utils.Vector2D;
@@ -18,11 +19,6 @@ public class BoundRule extends AbstractRule{
 	private FRectangle _rect;
 	private float _factor;
 	
-	private float XMIN;
-	private float XMAX;
-	private float YMIN;
-	private float YMAX;
-	
 	/**
 	 * Constructor
 	 * @param rect	the rectangle to bound all the boids in
@@ -40,30 +36,48 @@ public class BoundRule extends AbstractRule{
 		return _rect;
 	}
 
-	private Vector2D v = new Vector2D();
 	@Override
 	public Vector2D applyRule(Flockable boid) {
-		XMIN = _rect.getX();
-		XMAX = _rect.getX() + _rect.getWidth();
-		YMIN = _rect.getY();
-		YMAX = _rect.getY() + _rect.getHeight();
-		
-		// Reset Vector
-		v.set(0, 0);
+		// Keep everything local so the rule can be applied from several threads
+		float xmin = _rect.getX();
+		float xmax = _rect.getX() + _rect.getWidth();
+		float ymin = _rect.getY();
+		float ymax = _rect.getY() + _rect.getHeight();
 		
-		if(boid.getPosition().x < XMIN){
-			v.x = _factor;
-		}else if(boid.getPosition().x > XMAX){
-			v.x = -_factor;
+		float vx = 0, vy = 0;
+		if(boid.getPosition().x < xmin){
+			vx = _factor;
+		}else if(boid.getPosition().x > xmax){
+			vx = -_factor;
 		}
-		if(boid.getPosition().y < YMIN){
-			v.y = _factor;
-		}else if(boid.getPosition().y > YMAX){
-			v.y = -_factor;
+		if(boid.getPosition().y < ymin){
+			vy = _factor;
+		}else if(boid.getPosition().y > ymax){
+			vy = -_factor;
 		}
-
-		return v;
 		
+		// Boids inside the bounds are left alone
+		if(vx == 0 && vy == 0) return null;
+		return new Vector2D(vx, vy);
+		
+	}
+	
+	@Override
+	public void applyRule(FlockData data, int from, int to, float[] accX, float[] accY) {
+		float xmin = _rect.getX();
+		float xmax = _rect.getX() + _rect.getWidth();
+		float ymin = _rect.getY();
+		float ymax = _rect.getY() + _rect.getHeight();
+		float factor = _factor;
+		
+		float[] posX = data.posX, posY = data.posY;
+		for(int i=from; i<to; i++){
+			float x = posX[i], y = posY[i];
+			if(x < xmin) accX[i] += factor;
+			else if(x > xmax) accX[i] -= factor;
+			if(y < ymin) accY[i] += factor;
+			else if(y > ymax) accY[i] -= factor;
+		}
 	}
 
 }
@@ -0,0 +1,46 @@
+package net.r0adkll.flocking.rules;
+
+import net.r0adkll.flocking.FlockData;
+import net.r0adkll.flocking.utils.FRectangle;
+
+/**
+ * A batch rule that only affects the boids inside a region of the world,
+ * ie. around a hazard or an obstacle. When the engine has a spatial index
+ * it looks up the boids in the region and only hands those to the rule, so
+ * the rule costs as much as the boids it affects rather than the whole flock.
+ * 
+ * The index hands over every boid positioned inside the region, along with
+ * some that may be outside it, so the rule still has to check each one.
+ * When the region reaches out of the bounds of the index, where it doesn't
+ * track the boids, the rule is applied to the whole flock instead.
+ * Culled rules are applied on the updating thread, one after the other, once
+ * every other rule has been applied. Without an index they're applied to the
+ * whole flock like any other {@link BatchRule}.
+ * 
+ * @author r0adkll
+ *
+ */
+public interface CulledRule extends BatchRule {
+
+	/**
+	 * Get the region of the world the rule affects, called once every update
+	 * after {@link #beginTick(FlockData)}
+	 * 
+	 * @return		the region holding the position of every boid the rule
+	 * 				affects, or null to apply the rule to the whole flock
+	 */
+	public FRectangle getInfluence();
+	
+	/**
+	 * Apply the rule to a block of slots of the flock
+	 * 
+	 * @param data		the flock storage, holding the current state of every boid
+	 * @param slots		the array holding the slots, only to be read
+	 * @param from		the index of the first slot in the block
+	 * @param to		the index after the last slot in the block
+	 * @param accX		the x acceleration of each slot, to add the rule's into
+	 * @param accY		the y acceleration of each slot, to add the rule's into
+	 */
+	public void applyRule(FlockData data, int[] slots, int from, int to, float[] accX, float[] accY);
+	
+}
@@ -0,0 +1,90 @@
+package net.r0adkll.flocking.rules;
+
+import net.r0adkll.flocking.FlockData;
+import net.r0adkll.flocking.utils.DistanceField;
+
+/**
+ * This is the Distance Field obstacle rule, the flock avoids the shapes
+ * baked into a {@link DistanceField} however complex they are. Each boid looks
+ * up the 4 nodes around its position once, which gives both its distance to
+ * the nearest shape and the direction away from it.
+ *
+ * Boids closer than the range are steered away along the gradient of the field,
+ * the closer the harder, and boids that made it inside a shape are pushed back
+ * out to its edge. Boids are treated as points and off the field nothing is
+ * in their way.
+ *
+ * @author r0adkll
+ *
+ */
+public class DistanceFieldRule implements BatchRule {
+
+	/**
+	 * Variables
+	 */
+	private DistanceField _field;
+	private float _range;
+	private float _factor;
+
+	/**
+	 * Constructor
+	 * @param field		the baked distance field of the obstacles
+	 * @param range		the distance from the obstacles at which the boids start avoiding them
+	 * @param factor	the factor of avoidance, how fast do they 'avoid'
+	 */
+	public DistanceFieldRule(DistanceField field, float range, float factor){
+		_field = field;
+		_range = range;
+		_factor = factor;
+	}
+
+	/**
+	 * Get the distance field of the rule
+	 * @return		the field
+	 */
+	public DistanceField getField(){
+		return _field;
+	}
+
+	@Override
+	public void beginTick(FlockData data) {
+	}
+
+	@Override
+	public void applyRule(FlockData data, int from, int to, float[] accX, float[] accY) {
+		DistanceField field = _field;
+		float range = _range, factor = _factor;
+
+		// Local so the rule can be applied from several threads
+		float[] gradient = new float[2];
+
+		float[] posX = data.posX, posY = data.posY;
+		for(int s=from; s<to; s++){
+			// Off the field the distance is never within range
+			float d = field.sample(posX[s], posY[s], gradient);
+			if(d >= range) continue;
+
+			// The gradient points away from the obstacle
+			float gx = gradient[0], gy = gradient[1];
+			float len = (float)Math.sqrt(gx * gx + gy * gy);
+			if(len == 0) continue;
+			float nx = gx / len, ny = gy / len;
+
+			// Push it back out of the obstacle
+			if(d < 0){
+				posX[s] -= nx * d;
+				posY[s] -= ny * d;
+			}
+
+			// Steer it away, the closer the harder
+			float strength = d <= 0 ? factor : factor * (1 - d / range);
+			accX[s] += nx * strength;
+			accY[s] += ny * strength;
+		}
+	}
+
+	@Override
+	public void endTick() {
+	}
+
+}
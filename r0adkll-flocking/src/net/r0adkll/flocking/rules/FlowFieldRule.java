@@ -0,0 +1,148 @@
+package net.r0adkll.flocking.rules;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+import net.r0adkll.flocking.FlockData;
+import net.r0adkll.flocking.utils.FlowField;
+import net.r0adkll.flocking.utils.Vector2D;
+
+/**
+ * This is the Flow Field rule, a wind that changes from place to place. Each
+ * boid looks up the 4 nodes of a {@link FlowField} around its position and is
+ * pushed along the interpolated force, so environmental steering of any
+ * complexity costs the same one lookup. Off the field there's no force.
+ *
+ * The field is double buffered so it can be changed while the flock is being
+ * updated, ie. by a background thread recomputing it. Changes go into the back
+ * buffer between {@link #beginEdit()} and {@link #endEdit(int, int, int, int)},
+ * which marks the block of nodes that changed. At the start of the next update
+ * the buffers are swapped and only the changed block is copied back into the
+ * new back buffer, so small updates stay cheap. If an edit is still going on
+ * when an update starts, the flock keeps the old field for that update rather
+ * than waiting on it.
+ *
+ * @author r0adkll
+ *
+ */
+public class FlowFieldRule implements BatchRule {
+
+	/**
+	 * Variables
+	 */
+	private FlowField _front;
+	private FlowField _back;
+	private float _factor;
+
+	// Guards the back buffer and the changed block
+	private final ReentrantLock _lock = new ReentrantLock();
+	private volatile boolean _dirty = false;
+	private int _dirtyI0, _dirtyJ0, _dirtyI1, _dirtyJ1;
+
+	/**
+	 * Constructor
+	 * @param field		the flow field, the rule takes it over as its front buffer
+	 * @param factor	the factor the force of the field is scaled by
+	 */
+	public FlowFieldRule(FlowField field, float factor){
+		_front = field;
+		_back = new FlowField(field);
+		_factor = factor;
+	}
+
+	/**
+	 * Get the flow field the flock is steered by, it must not be changed
+	 * directly, use {@link #beginEdit()} instead
+	 * @return		the front buffer
+	 */
+	public FlowField getField(){
+		return _front;
+	}
+
+	/**
+	 * Start changing the field, the back buffer is locked until
+	 * {@link #endEdit(int, int, int, int)} is called, from the same thread
+	 *
+	 * @return		the back buffer, it starts out the same as the field being used
+	 */
+	public FlowField beginEdit(){
+		_lock.lock();
+		return _back;
+	}
+
+	/**
+	 * Finish changing the field, the changes are used from the next update on
+	 *
+	 * @param i0		the first node changed along x
+	 * @param j0		the first node changed along y
+	 * @param i1		the last node changed along x, inclusive
+	 * @param j1		the last node changed along y, inclusive
+	 */
+	public void endEdit(int i0, int j0, int i1, int j1){
+		try{
+			if(_dirty){
+				_dirtyI0 = Math.min(_dirtyI0, i0);
+				_dirtyJ0 = Math.min(_dirtyJ0, j0);
+				_dirtyI1 = Math.max(_dirtyI1, i1);
+				_dirtyJ1 = Math.max(_dirtyJ1, j1);
+			}else{
+				_dirtyI0 = i0;
+				_dirtyJ0 = j0;
+				_dirtyI1 = i1;
+				_dirtyJ1 = j1;
+				_dirty = true;
+			}
+		}finally{
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Finish changing the field after changing all of it
+	 */
+	public void endEdit(){
+		endEdit(0, 0, _back.width - 1, _back.height - 1);
+	}
+
+	/**
+	 * Swap in the changes made since the last update, unless they're still
+	 * being made
+	 */
+	@Override
+	public void beginTick(FlockData data) {
+		if(!_dirty || !_lock.tryLock()) return;
+		try{
+			if(!_dirty) return;
+
+			FlowField field = _back;
+			_back = _front;
+			_front = field;
+
+			// Bring the new back buffer up to date with the changed block
+			_back.copyRegion(_front, _dirtyI0, _dirtyJ0, _dirtyI1, _dirtyJ1);
+			_dirty = false;
+		}finally{
+			_lock.unlock();
+		}
+	}
+
+	@Override
+	public void applyRule(FlockData data, int from, int to, float[] accX, float[] accY) {
+		FlowField field = _front;
+		float factor = _factor;
+
+		// Local so the rule can be applied from several threads
+		Vector2D force = new Vector2D();
+
+		float[] posX = data.posX, posY = data.posY;
+		for(int s=from; s<to; s++){
+			field.sample(posX[s], posY[s], force);
+			accX[s] += force.x * factor;
+			accY[s] += force.y * factor;
+		}
+	}
+
+	@Override
+	public void endTick() {
+	}
+
+}
@@ -1,9 +1,11 @@
 package net.r0adkll.flocking.rules;
 
+import net.r0adkll.flocking.FlockData;
 import net.r0adkll.flocking.Flockable;
+import net.r0adkll.flocking.utils.FRectangle;
 import net.r0adkll.flocking.utils.Vector2D;
 
-public class HazardRule extends AbstractRule{
+public class HazardRule extends AbstractRule implements CulledRule{
 
 	/**
 	 * Variables
@@ -11,6 +13,7 @@ public class HazardRule extends AbstractRule{
 	private Flockable _entity;
 	private float _radius;
 	private int _factor; 
+	private FRectangle _influence = new FRectangle();
 	
 	/**
 	 * Constructor
@@ -41,6 +44,58 @@ public class HazardRule extends AbstractRule{
 		return new Vector2D();
 	}
 	
+	@Override
+	public void applyRule(FlockData data, int from, int to, float[] accX, float[] accY) {
+		float hx = _entity.getPosition().x;
+		float hy = _entity.getPosition().y;
+		float radiusSq = getRadiusSq();
+		float factor = _factor;
+		
+		float[] posX = data.posX, posY = data.posY;
+		for(int i=from; i<to; i++){
+			float mDiffX = hx - posX[i];
+			float mDiffY = hy - posY[i];
+			float mDistSq = mDiffX * mDiffX + mDiffY * mDiffY;
+			if (mDistSq < radiusSq) {
+				float mDist = (float) Math.sqrt(mDistSq);
+				// push it away from the hazard
+				accX[i] -= (mDiffX/mDist) * factor;
+				accY[i] -= (mDiffY/mDist) * factor;
+			}
+		}
+	}
+	
+	/**
+	 * Only the boids within the radius of the hazard are affected
+	 */
+	@Override
+	public FRectangle getInfluence() {
+		_influence.set(_entity.getPosition().x - _radius, _entity.getPosition().y - _radius, _radius * 2, _radius * 2);
+		return _influence;
+	}
+	
+	@Override
+	public void applyRule(FlockData data, int[] slots, int from, int to, float[] accX, float[] accY) {
+		float hx = _entity.getPosition().x;
+		float hy = _entity.getPosition().y;
+		float radiusSq = getRadiusSq();
+		float factor = _factor;
+		
+		float[] posX = data.posX, posY = data.posY;
+		for(int i=from; i<to; i++){
+			int slot = slots[i];
+			float mDiffX = hx - posX[slot];
+			float mDiffY = hy - posY[slot];
+			float mDistSq = mDiffX * mDiffX + mDiffY * mDiffY;
+			if (mDistSq < radiusSq) {
+				float mDist = (float) Math.sqrt(mDistSq);
+				// push it away from the hazard
+				accX[slot] -= (mDiffX/mDist) * factor;
+				accY[slot] -= (mDiffY/mDist) * factor;
+			}
+		}
+	}
+	
 	/**
 	 * Get the Radius distance squared for 
 	 * more effiecient calculations
@@ -0,0 +1,348 @@
+package net.r0adkll.flocking.rules;
+
+import net.r0adkll.flocking.FlockData;
+import net.r0adkll.flocking.Flockable;
+import net.r0adkll.flocking.utils.LongIntMap;
+
+/**
+ * A layer of many hazards and targets that share one spatial index, for
+ * modes with far too many of them to give each a {@link HazardRule} or
+ * {@link TargetRule} and its own pass over the flock.
+ *
+ * The influencers are bucketed into a uniform grid without bounds, like the
+ * hashed grid of the engine, only each one is put in every cell its radius
+ * reaches into. So a boid only ever looks in the one cell its position is in
+ * and gathers every influencer that can reach it in that single lookup, which
+ * keeps the cost of the layer following the number of boids rather than boids
+ * times influencers. The grid is refreshed incrementally at the start of every
+ * update, only the influencers that moved into a different block of cells are
+ * taken out of their old cells and put in the new ones.
+ *
+ * A hazard pushes the boids within its radius away and a target pulls them in,
+ * the same way the hazard and target rules do.
+ *
+ * @author r0adkll
+ *
+ */
+public class InfluenceLayer implements BatchRule {
+
+	/**************************************************************************
+	 * Constants
+	 */
+
+	// Cell coordinates are clamped to this range so that the packed keys stay unique
+	private static final int maxCell = 1 << 30;
+
+
+	/**************************************************************************
+	 * Variables
+	 */
+
+	// The influencers
+	private int _count = 0;
+	private Flockable[] _entities = new Flockable[16];
+	private float[] _x = new float[16];
+	private float[] _y = new float[16];
+	private float[] _radius = new float[16];
+	private float[] _weight = new float[16];	// the factor, negative for hazards
+
+	// The block of cells each influencer is in
+	private int[] _cellX0 = new int[16], _cellY0 = new int[16];
+	private int[] _cellX1 = new int[16], _cellY1 = new int[16];
+
+	// The grid of influencers
+	private float _cellSize;
+	private LongIntMap _cellIds = new LongIntMap(64);
+	private int[][] _cellItems = new int[64][];	// _cellItems[id] = the influencers in the cell
+	private int[] _cellCount = new int[64];		// _cellCount[id] = the number of influencers in the cell
+	private long[] _cellKeys = new long[64];	// _cellKeys[id] = the packed coordinates of the cell
+	private int[] _freeIds = new int[64];
+	private int _freeCount = 0;
+	private int _cellCapacity = 0;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param cellSize		the size of the grid cells, around the radius of a typical influencer
+	 */
+	public InfluenceLayer(float cellSize){
+		_cellSize = cellSize;
+	}
+
+	/**
+	 * Add a hazard to the layer, this should only be called between updates
+	 *
+	 * @param hazard	the flockable object that must be avoided
+	 * @param radius	the radius of boid detection
+	 * @param factor	the factor of avoidance, how fast do they 'avoid'
+	 */
+	public void addHazard(Flockable hazard, float radius, float factor){
+		add(hazard, radius, -factor);
+	}
+
+	/**
+	 * Add a target to the layer, this should only be called between updates
+	 *
+	 * @param target	the flockable target object
+	 * @param radius	the radius of flocking detection
+	 * @param factor	the factor of how fast they swarm it
+	 */
+	public void addTarget(Flockable target, float radius, float factor){
+		add(target, radius, factor);
+	}
+
+	/**
+	 * Remove a hazard or target from the layer, this should only be called between updates
+	 *
+	 * @param entity	the hazard or target to remove
+	 * @return			true if it was in the layer
+	 */
+	public boolean remove(Flockable entity){
+		int i = 0;
+		while(i < _count && _entities[i] != entity) i++;
+		if(i == _count) return false;
+
+		unbucket(i);
+		int last = --_count;
+		if(i != last){
+			// Move the last influencer into the hole
+			unbucket(last);
+			_entities[i] = _entities[last];
+			_x[i] = _x[last];
+			_y[i] = _y[last];
+			_radius[i] = _radius[last];
+			_weight[i] = _weight[last];
+			bucket(i);
+		}
+		_entities[last] = null;
+		return true;
+	}
+
+	/**
+	 * Get the number of hazards and targets in the layer
+	 */
+	public int getCount(){
+		return _count;
+	}
+
+
+	/**************************************************************************
+	 * Rule Methods
+	 */
+
+	/**
+	 * Move the influencers that left their block of cells
+	 */
+	@Override
+	public void beginTick(FlockData data) {
+		for(int i=0; i<_count; i++){
+			float x = _entities[i].getPosition().x;
+			float y = _entities[i].getPosition().y;
+			_x[i] = x;
+			_y[i] = y;
+
+			float r = _radius[i];
+			if(cellCoord(x - r) != _cellX0[i] || cellCoord(y - r) != _cellY0[i]
+					|| cellCoord(x + r) != _cellX1[i] || cellCoord(y + r) != _cellY1[i]){
+				unbucket(i);
+				bucket(i);
+			}
+		}
+	}
+
+	@Override
+	public void applyRule(FlockData data, int from, int to, float[] accX, float[] accY) {
+		if(_count == 0) return;
+
+		float[] posX = data.posX, posY = data.posY;
+		float[] ex = _x, ey = _y, radius = _radius, weight = _weight;
+		for(int s=from; s<to; s++){
+			float px = posX[s], py = posY[s];
+			int id = _cellIds.get(pack(cellCoord(px), cellCoord(py)), -1);
+			if(id < 0) continue;
+
+			int[] items = _cellItems[id];
+			int count = _cellCount[id];
+			float ax = 0, ay = 0;
+			for(int c=0; c<count; c++){
+				int i = items[c];
+				float mDiffX = ex[i] - px;
+				float mDiffY = ey[i] - py;
+				float mDistSq = mDiffX * mDiffX + mDiffY * mDiffY;
+				if(mDistSq < radius[i] * radius[i]){
+					float mDist = (float) Math.sqrt(mDistSq);
+					// push it away from a hazard, or pull it in towards a target
+					ax += (mDiffX/mDist) * weight[i];
+					ay += (mDiffY/mDist) * weight[i];
+				}
+			}
+			accX[s] += ax;
+			accY[s] += ay;
+		}
+	}
+
+	@Override
+	public void endTick() {
+	}
+
+
+	/**************************************************************************
+	 * Helper Methods
+	 */
+
+	private void add(Flockable entity, float radius, float weight){
+		if(_count == _entities.length) grow();
+
+		int i = _count++;
+		_entities[i] = entity;
+		_x[i] = entity.getPosition().x;
+		_y[i] = entity.getPosition().y;
+		_radius[i] = radius;
+		_weight[i] = weight;
+		bucket(i);
+	}
+
+	/**
+	 * Put an influencer in every cell its radius reaches into
+	 */
+	private void bucket(int i){
+		float r = _radius[i];
+		int x0 = _cellX0[i] = cellCoord(_x[i] - r);
+		int y0 = _cellY0[i] = cellCoord(_y[i] - r);
+		int x1 = _cellX1[i] = cellCoord(_x[i] + r);
+		int y1 = _cellY1[i] = cellCoord(_y[i] + r);
+		for(int cx=x0; cx<=x1; cx++){
+			for(int cy=y0; cy<=y1; cy++){
+				insert(i, pack(cx, cy));
+			}
+		}
+	}
+
+	/**
+	 * Take an influencer out of every cell it was put in
+	 */
+	private void unbucket(int i){
+		for(int cx=_cellX0[i]; cx<=_cellX1[i]; cx++){
+			for(int cy=_cellY0[i]; cy<=_cellY1[i]; cy++){
+				delete(i, pack(cx, cy));
+			}
+		}
+	}
+
+	/**
+	 * Append an influencer to a cell, taking a cell out of the
+	 * pool if there isn't one with that key yet
+	 */
+	private void insert(int i, long key){
+		int id = _cellIds.get(key, -1);
+		if(id < 0){
+			id = allocateCell();
+			_cellKeys[id] = key;
+			_cellIds.put(key, id);
+		}
+
+		int[] items = _cellItems[id];
+		int count = _cellCount[id];
+		if(items == null){
+			items = _cellItems[id] = new int[4];
+		}else if(count == items.length){
+			int[] grown = new int[count * 2];
+			System.arraycopy(items, 0, grown, 0, count);
+			items = _cellItems[id] = grown;
+		}
+		items[count] = i;
+		_cellCount[id] = count + 1;
+	}
+
+	/**
+	 * Remove an influencer from a cell by moving the cell's last one into
+	 * its place, the cell goes back to the pool once it's empty
+	 */
+	private void delete(int i, long key){
+		int id = _cellIds.get(key, -1);
+		if(id < 0) return;
+
+		int[] items = _cellItems[id];
+		int last = --_cellCount[id];
+		for(int c=0; c<=last; c++){
+			if(items[c] == i){
+				items[c] = items[last];
+				break;
+			}
+		}
+
+		if(last == 0){
+			_cellIds.remove(key, -1);
+			_freeIds[_freeCount++] = id;
+		}
+	}
+
+	/**
+	 * Get an unused cell id, the item array of a reused
+	 * cell is kept to save allocating a new one
+	 */
+	private int allocateCell(){
+		if(_freeCount > 0) return _freeIds[--_freeCount];
+
+		if(_cellCapacity == _cellCount.length){
+			int capacity = _cellCapacity * 2;
+			int[][] items = new int[capacity][];
+			int[] count = new int[capacity];
+			long[] keys = new long[capacity];
+			System.arraycopy(_cellItems, 0, items, 0, _cellCapacity);
+			System.arraycopy(_cellCount, 0, count, 0, _cellCapacity);
+			System.arraycopy(_cellKeys, 0, keys, 0, _cellCapacity);
+			_cellItems = items;
+			_cellCount = count;
+			_cellKeys = keys;
+			_freeIds = new int[capacity];
+		}
+		return _cellCapacity++;
+	}
+
+	private void grow(){
+		int capacity = _entities.length * 2;
+		Flockable[] entities = new Flockable[capacity];
+		System.arraycopy(_entities, 0, entities, 0, _count);
+		_entities = entities;
+		_x = grow(_x, capacity);
+		_y = grow(_y, capacity);
+		_radius = grow(_radius, capacity);
+		_weight = grow(_weight, capacity);
+		_cellX0 = grow(_cellX0, capacity);
+		_cellY0 = grow(_cellY0, capacity);
+		_cellX1 = grow(_cellX1, capacity);
+		_cellY1 = grow(_cellY1, capacity);
+	}
+
+	private float[] grow(float[] array, int capacity){
+		float[] grown = new float[capacity];
+		System.arraycopy(array, 0, grown, 0, _count);
+		return grown;
+	}
+
+	private int[] grow(int[] array, int capacity){
+		int[] grown = new int[capacity];
+		System.arraycopy(array, 0, grown, 0, _count);
+		return grown;
+	}
+
+	/**
+	 * Get the cell coordinate of a position along one axis
+	 */
+	private int cellCoord(float v){
+		float f = v / _cellSize;
+		int c = (int)f;
+		c = f < c ? c - 1 : c;
+		return Math.max(-maxCell, Math.min(c, maxCell));
+	}
+
+	/**
+	 * Pack two cell coordinates into a map key
+	 */
+	private static long pack(int cellX, int cellY){
+		return ((long)cellX << 32) | (cellY & 0xffffffffL);
+	}
+
+}
@@ -0,0 +1,365 @@
+package net.r0adkll.flocking.rules;
+
+import java.util.List;
+
+import net.r0adkll.flocking.FlockData;
+import net.r0adkll.flocking.Flockable;
+import net.r0adkll.flocking.utils.FRectangle;
+
+/**
+ * A layer of static rectangle obstacles that the flock collides with, for
+ * levels with far too many obstacles to give each a {@link RectCollisionRule}.
+ *
+ * The obstacles are bulk loaded into a bucketed grid once, in compressed
+ * sparse row layout, with the obstacles of cell c stored between cellStart[c]
+ * and cellStart[c+1]. Each obstacle is put in every cell that a boid could be
+ * positioned in and still overlap it, so a boid only ever looks in the one cell
+ * its position is in, and only fetches its bounds when that cell isn't empty.
+ *
+ * Boids are pushed out of every obstacle they overlap, the same way the rect
+ * collision rule does it. Instead of a callback per collision, the collisions
+ * are marked per boid slot while the rule is applied and gathered into an event
+ * buffer at the end of the update, which is handed to the {@link Collisions}
+ * listener in one go on the updating thread.
+ *
+ * @author r0adkll
+ *
+ */
+public class ObstacleLayer implements BatchRule {
+
+	/**************************************************************************
+	 * Variables
+	 */
+
+	// The obstacles, as loaded
+	private FRectangle[] _obstacles;
+	private float[] _left, _top, _right, _bottom;
+
+	// The grid of obstacles
+	private float _cellSize;
+	private float _originX, _originY;
+	private int _cellWidth, _cellHeight;
+	private int[] _cellStart;		// _cellStart[cell] = the first index into _cellObstacles of the cell
+	private int[] _cellObstacles;	// the obstacles of every cell, sorted by cell
+
+	// The first obstacle each slot collided with this update, or -1, and how deep it went
+	private int[] _hitObstacle = new int[0];
+	private float[] _hitDepthX = new float[0];
+	private float[] _hitDepthY = new float[0];
+
+	// The event buffer of the last update
+	private int _eventCount = 0;
+	private Flockable[] _eventBoids = new Flockable[16];
+	private int[] _eventObstacles = new int[16];
+	private float[] _eventDepthX = new float[16];
+	private float[] _eventDepthY = new float[16];
+
+	private FlockData _data;
+	private Collisions _listener;
+
+
+	/**
+	 * Constructor
+	 *
+	 * @param obstacles		the obstacles to load, they're copied so later changes to them are ignored
+	 * @param cellSize		the size of the grid cells, around the size of a typical obstacle
+	 * @param maxBoidSize	the width&height of the largest boid in the flock
+	 */
+	public ObstacleLayer(List<FRectangle> obstacles, float cellSize, float maxBoidSize){
+		int count = obstacles.size();
+		_obstacles = new FRectangle[count];
+		_left = new float[count];
+		_top = new float[count];
+		_right = new float[count];
+		_bottom = new float[count];
+		_cellSize = cellSize;
+
+		// The bounds that boid positions can collide within
+		float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+		float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+		for(int i=0; i<count; i++){
+			FRectangle rect = new FRectangle(obstacles.get(i));
+			_obstacles[i] = rect;
+			_left[i] = rect.x;
+			_top[i] = rect.y;
+			_right[i] = rect.x + rect.width;
+			_bottom[i] = rect.y + rect.height;
+
+			minX = Math.min(minX, _left[i] - maxBoidSize);
+			minY = Math.min(minY, _top[i] - maxBoidSize);
+			maxX = Math.max(maxX, _right[i]);
+			maxY = Math.max(maxY, _bottom[i]);
+		}
+
+		if(count == 0){
+			minX = minY = maxX = maxY = 0;
+		}
+		_originX = minX;
+		_originY = minY;
+		_cellWidth = (int)((maxX - minX) / cellSize) + 1;
+		_cellHeight = (int)((maxY - minY) / cellSize) + 1;
+
+		// Count the obstacles of each cell, then prefix sum and scatter them
+		_cellStart = new int[_cellWidth * _cellHeight + 1];
+		for(int pass=0; pass<2; pass++){
+			for(int i=0; i<count; i++){
+				int x0 = Math.max(cellCoord(_left[i] - maxBoidSize - _originX), 0);
+				int y0 = Math.max(cellCoord(_top[i] - maxBoidSize - _originY), 0);
+				int x1 = Math.min(cellCoord(_right[i] - _originX), _cellWidth - 1);
+				int y1 = Math.min(cellCoord(_bottom[i] - _originY), _cellHeight - 1);
+				for(int cx=x0; cx<=x1; cx++){
+					for(int cy=y0; cy<=y1; cy++){
+						int cell = cx * _cellHeight + cy;
+						if(pass == 0){
+							_cellStart[cell + 1]++;
+						}else{
+							_cellObstacles[_cellStart[cell]++] = i;
+						}
+					}
+				}
+			}
+
+			if(pass == 0){
+				for(int c=0; c<_cellWidth * _cellHeight; c++){
+					_cellStart[c + 1] += _cellStart[c];
+				}
+				_cellObstacles = new int[_cellStart[_cellWidth * _cellHeight]];
+			}
+		}
+
+		// The scatter moved every start up to the next cell's, shift them back
+		for(int c=_cellWidth * _cellHeight; c>0; c--){
+			_cellStart[c] = _cellStart[c - 1];
+		}
+		_cellStart[0] = 0;
+	}
+
+	/**
+	 * Set the listener that is handed the collisions of every update
+	 *
+	 * @param listener		the collisions listener reference
+	 */
+	public void setOnCollisionsListener(Collisions listener){
+		_listener = listener;
+	}
+
+	/**
+	 * Get an obstacle of the layer
+	 * @param index		the index of the obstacle, in the order they were loaded
+	 * @return			the obstacle
+	 */
+	public FRectangle getObstacle(int index){
+		return _obstacles[index];
+	}
+
+	/**
+	 * Get the number of obstacles in the layer
+	 */
+	public int getObstacleCount(){
+		return _obstacles.length;
+	}
+
+
+	/**************************************************************************
+	 * Rule Methods
+	 */
+
+	@Override
+	public void beginTick(FlockData data) {
+		_data = data;
+		int capacity = data.boids.length;
+		if(_hitObstacle.length < capacity){
+			_hitObstacle = new int[capacity];
+			_hitDepthX = new float[capacity];
+			_hitDepthY = new float[capacity];
+		}
+	}
+
+	/**
+	 * Push the boids of the range out of the obstacles they overlap, the bounds
+	 * of a boid sit at its position as the engine keeps them
+	 */
+	@Override
+	public void applyRule(FlockData data, int from, int to, float[] accX, float[] accY) {
+		float[] posX = data.posX, posY = data.posY;
+		int[] cellStart = _cellStart, cellObstacles = _cellObstacles;
+
+		for(int i=from; i<to; i++){
+			_hitObstacle[i] = -1;
+
+			// Find the one cell holding every obstacle the boid can overlap
+			float x = posX[i], y = posY[i];
+			int cx = cellCoord(x - _originX);
+			int cy = cellCoord(y - _originY);
+			if(cx < 0 || cx >= _cellWidth || cy < 0 || cy >= _cellHeight) continue;
+			int cell = cx * _cellHeight + cy;
+			int start = cellStart[cell], end = cellStart[cell + 1];
+			if(start == end) continue;
+
+			FRectangle bounds = data.boids[i].getBounds();
+			float width = bounds.width, height = bounds.height;
+			for(int c=start; c<end; c++){
+				int o = cellObstacles[c];
+				float bLeft = x, bTop = y;
+				float bRight = x + width, bBottom = y + height;
+				float rLeft = _left[o], rTop = _top[o];
+				float rRight = _right[o], rBottom = _bottom[o];
+
+				// Trivial Rejections
+				if(bLeft > rRight || bTop > rBottom || bRight < rLeft || bBottom < rTop) continue;
+
+				// Compute overlap
+				float oLeft = rLeft < bLeft ? bLeft : rLeft;
+				float oRight = rRight > bRight ? bRight : rRight;
+				float oTop = rTop < bTop ? bTop : rTop;
+				float oBottom = rBottom > bBottom ? bBottom : rBottom;
+
+				float xDepth = oRight - oLeft;
+				float yDepth = oTop - oBottom;
+				float absXDepth = (xDepth < 0) ? -xDepth: xDepth;
+				float absYDepth = (yDepth < 0) ? -yDepth: yDepth;
+
+				// Push the boid out along the shallowest axis, later obstacles
+				// of the cell see where the earlier ones pushed it to
+				if(absXDepth < absYDepth){
+					x = bLeft < rLeft ? x - xDepth : x + xDepth;
+				}else{
+					y = bTop < rTop ? y + yDepth : y - yDepth;
+				}
+
+				if(_hitObstacle[i] < 0){
+					_hitObstacle[i] = o;
+					_hitDepthX[i] = xDepth;
+					_hitDepthY[i] = yDepth;
+				}
+			}
+
+			posX[i] = x;
+			posY[i] = y;
+		}
+	}
+
+	/**
+	 * Gather the collisions of the update into the event buffer
+	 * and hand them to the listener
+	 */
+	@Override
+	public void endTick() {
+		FlockData data = _data;
+		_data = null;
+		if(data == null) return;
+
+		int count = 0;
+		for(int i=0; i<data.size; i++){
+			int o = _hitObstacle[i];
+			if(o < 0) continue;
+
+			if(count == _eventBoids.length) growEvents();
+			_eventBoids[count] = data.boids[i];
+			_eventObstacles[count] = o;
+			_eventDepthX[count] = _hitDepthX[i];
+			_eventDepthY[count] = _hitDepthY[i];
+			count++;
+		}
+
+		// Let go of the boids of the last update
+		for(int i=count; i<_eventCount; i++){
+			_eventBoids[i] = null;
+		}
+		_eventCount = count;
+
+		if(_listener != null && count > 0) _listener.onCollisions(this);
+	}
+
+
+	/**************************************************************************
+	 * Event Methods
+	 * - The collisions of the last update, a boid has at most one event
+	 *   per update, for the first obstacle it was pushed out of
+	 */
+
+	/**
+	 * Get the number of boids that collided in the last update
+	 */
+	public int getCollisionCount(){
+		return _eventCount;
+	}
+
+	/**
+	 * Get the boid of a collision
+	 * @param event		the index of the collision, below {@link #getCollisionCount()}
+	 */
+	public Flockable getCollisionBoid(int event){
+		return _eventBoids[event];
+	}
+
+	/**
+	 * Get the index of the obstacle of a collision
+	 * @param event		the index of the collision, below {@link #getCollisionCount()}
+	 * @see #getObstacle(int)
+	 */
+	public int getCollisionObstacle(int event){
+		return _eventObstacles[event];
+	}
+
+	/**
+	 * Get the depth of a collision along x
+	 * @param event		the index of the collision, below {@link #getCollisionCount()}
+	 */
+	public float getCollisionDepthX(int event){
+		return _eventDepthX[event];
+	}
+
+	/**
+	 * Get the depth of a collision along y
+	 * @param event		the index of the collision, below {@link #getCollisionCount()}
+	 */
+	public float getCollisionDepthY(int event){
+		return _eventDepthY[event];
+	}
+
+
+	/**************************************************************************
+	 * Helper Methods
+	 */
+
+	/**
+	 * Get the cell coordinate of a position along one axis,
+	 * relative to the origin of the grid
+	 */
+	private int cellCoord(float v){
+		float f = v / _cellSize;
+		int c = (int)f;
+		return f < c ? c - 1 : c;
+	}
+
+	private void growEvents(){
+		int capacity = _eventBoids.length * 2;
+		Flockable[] boids = new Flockable[capacity];
+		System.arraycopy(_eventBoids, 0, boids, 0, _eventBoids.length);
+		_eventBoids = boids;
+
+		int[] obstacles = new int[capacity];
+		System.arraycopy(_eventObstacles, 0, obstacles, 0, _eventObstacles.length);
+		_eventObstacles = obstacles;
+
+		float[] depthX = new float[capacity];
+		System.arraycopy(_eventDepthX, 0, depthX, 0, _eventDepthX.length);
+		_eventDepthX = depthX;
+
+		float[] depthY = new float[capacity];
+		System.arraycopy(_eventDepthY, 0, depthY, 0, _eventDepthY.length);
+		_eventDepthY = depthY;
+	}
+
+	/**
+	 * This is the interface that get's called at the end of every
+	 * update in which boids collided with the layer's obstacles
+	 * @author r0adkll
+	 *
+	 */
+	public static interface Collisions{
+		public void onCollisions(ObstacleLayer layer);
+	}
+
+}
@@ -1,5 +1,6 @@
 package net.r0adkll.flocking.rules;
 
+import net.r0adkll.flocking.FlockData;
 import net.r0adkll.flocking.Flockable;
 import net.r0adkll.flocking.utils.FRectangle;
 import net.r0adkll.flocking.utils.Vector2D;
@@ -10,17 +11,15 @@ import net.r0adkll.flocking.utils.Vector2D;
  * @author r0adkll
  *
  */
-public class RectCollisionRule extends AbstractRule{
+public class RectCollisionRule extends AbstractRule implements CulledRule{
 
 	/**
 	 * Variables
 	 */
 	private FRectangle _rect;
 	private Collision _listener;
-	
-	private float bLeft, bRight, bTop, bBottom;
-	private float rLeft, rRight, rTop, rBottom;
-	private float oLeft, oRight, oTop, oBottom;
+	private float _maxBoidSize = 0;
+	private FRectangle _influence = new FRectangle();
 	
 	/**
 	 * Constructor
@@ -40,6 +39,16 @@ public class RectCollisionRule extends AbstractRule{
 		_listener = listener;
 	}
 	
+	/**
+	 * Set the width&height of the largest boid in the flock, once it's
+	 * known the engine only hands the rule the boids close to the rect
+	 * 
+	 * @param size		the size of the largest boid, or 0 if it isn't known
+	 */
+	public void setMaxBoidSize(float size){
+		_maxBoidSize = size;
+	}
+	
 	@Override
 	public Vector2D applyRule(Flockable boid) {
 		// Trivial Rejections
@@ -51,6 +60,11 @@ public class RectCollisionRule extends AbstractRule{
 		// Coarse check the rect
 		if(_rect.overlaps(boid.getBounds())){
 
+			// Keep everything local so the rule can be applied from several threads
+			float bLeft, bRight, bTop, bBottom;
+			float rLeft, rRight, rTop, rBottom;
+			float oLeft, oRight, oTop, oBottom;
+
 			bLeft = boid.getBounds().x;
 			bTop = boid.getBounds().y;
 			bRight = bLeft + boid.getBounds().width;
@@ -100,9 +114,96 @@ public class RectCollisionRule extends AbstractRule{
 		}
 		return null;
 	}
+	
+	/**
+	 * Push the boids of the range that overlap the rect back out of it through
+	 * their position columns. The bounds of a boid sit at its position, as the
+	 * engine keeps them, and their size is only looked up once the position is
+	 * close enough to overlap
+	 */
+	@Override
+	public void applyRule(FlockData data, int from, int to, float[] accX, float[] accY) {
+		for(int i=from; i<to; i++){
+			collide(data, i);
+		}
+	}
+	
+	/**
+	 * Only the boids close enough to the rect to overlap it are affected,
+	 * which needs the size of the largest boid to be known
+	 * 
+	 * @see #setMaxBoidSize(float)
+	 */
+	@Override
+	public FRectangle getInfluence() {
+		if(_maxBoidSize <= 0) return null;
+		
+		// The bounds of a boid hang right and down from its position
+		_influence.set(_rect.x - _maxBoidSize, _rect.y - _maxBoidSize, _rect.width + _maxBoidSize, _rect.height + _maxBoidSize);
+		return _influence;
+	}
+	
+	@Override
+	public void applyRule(FlockData data, int[] slots, int from, int to, float[] accX, float[] accY) {
+		for(int i=from; i<to; i++){
+			collide(data, slots[i]);
+		}
+	}
+	
+	/**
+	 * Push a boid slot back out of the rect if its bounds overlap it
+	 * 
+	 * @param data		the flock storage
+	 * @param slot		the slot of the boid
+	 */
+	private void collide(FlockData data, int slot){
+		float rLeft = _rect.x;
+		float rTop = _rect.y;
+		float rRight = rLeft + _rect.width;
+		float rBottom = rTop + _rect.height;
+		
+		float bLeft = data.posX[slot];
+		float bTop = data.posY[slot];
+		
+		// Trivial Rejections
+		if(bLeft > rRight || bTop > rBottom) return;
+		FRectangle bounds = data.boids[slot].getBounds();
+		float bRight = bLeft + bounds.width;
+		float bBottom = bTop + bounds.height;
+		if(bRight < rLeft || bBottom < rTop) return;
+		
+		// Compute overlap
+		float oLeft = rLeft < bLeft ? bLeft : rLeft;
+		float oRight = rRight > bRight ? bRight : rRight;
+		float oTop = rTop < bTop ? bTop : rTop;
+		float oBottom = rBottom > bBottom ? bBottom : rBottom;
+		
+		float xDepth = oRight - oLeft;
+		float yDepth = oTop - oBottom;
+		float absXDepth = (xDepth < 0) ? -xDepth: xDepth;
+		float absYDepth = (yDepth < 0) ? -yDepth: yDepth;
+		
+		if(absXDepth < absYDepth){
+			if(bLeft < rLeft){
+				data.posX[slot] -= xDepth;
+			}else{
+				data.posX[slot] += xDepth;
+			}
+		}else{
+			if(bTop < rTop){
+				data.posY[slot] += yDepth;
+			}else{
+				data.posY[slot] -= yDepth;
+			}
+		}
+		if(_listener != null) _listener.onCollision(data.boids[slot], xDepth, yDepth);
+	}
 
 	/**
-	 * This is the interface that get's called when there is a collision due to this rule
+	 * This is the interface that get's called when there is a collision due to this rule,
+	 * with the engine's parallel update enabled it's called from the worker threads.
+	 * With the engine's array storage enabled the boid is pushed out through its slot,
+	 * its position is only updated at the end of the update
 	 * @author r0adkll
 	 *
 	 */
@@ -1,6 +1,8 @@
 package net.r0adkll.flocking.rules;
 
+import net.r0adkll.flocking.FlockData;
 import net.r0adkll.flocking.Flockable;
+import net.r0adkll.flocking.utils.FRectangle;
 import net.r0adkll.flocking.utils.Vector2D;
 
 /**
@@ -11,7 +13,7 @@ import net.r0adkll.flocking.utils.Vector2D;
  * @author r0adkll
  *
  */
-public class TargetRule extends AbstractRule{
+public class TargetRule extends AbstractRule implements CulledRule{
 
 	/**
 	 * Variables
@@ -19,6 +21,7 @@ public class TargetRule extends AbstractRule{
 	private Flockable _entity;
 	private float _radius;
 	private int _factor; 
+	private FRectangle _influence = new FRectangle();
 	
 	/**
 	 * Constructor
@@ -47,6 +50,58 @@ public class TargetRule extends AbstractRule{
 		return new Vector2D();
 	}
 	
+	@Override
+	public void applyRule(FlockData data, int from, int to, float[] accX, float[] accY) {
+		float tx = _entity.getPosition().x;
+		float ty = _entity.getPosition().y;
+		float radiusSq = getRadiusSq();
+		float factor = _factor;
+		
+		float[] posX = data.posX, posY = data.posY;
+		for(int i=from; i<to; i++){
+			float mDiffX = posX[i] - tx;
+			float mDiffY = posY[i] - ty;
+			float mDistSq = mDiffX * mDiffX + mDiffY * mDiffY;
+			if (mDistSq < radiusSq) {
+				float mDist = (float) Math.sqrt(mDistSq);
+				// pull it in towards the target
+				accX[i] -= (mDiffX/mDist) * factor;
+				accY[i] -= (mDiffY/mDist) * factor;
+			}
+		}
+	}
+	
+	/**
+	 * Only the boids within the radius of the target are affected
+	 */
+	@Override
+	public FRectangle getInfluence() {
+		_influence.set(_entity.getPosition().x - _radius, _entity.getPosition().y - _radius, _radius * 2, _radius * 2);
+		return _influence;
+	}
+	
+	@Override
+	public void applyRule(FlockData data, int[] slots, int from, int to, float[] accX, float[] accY) {
+		float tx = _entity.getPosition().x;
+		float ty = _entity.getPosition().y;
+		float radiusSq = getRadiusSq();
+		float factor = _factor;
+		
+		float[] posX = data.posX, posY = data.posY;
+		for(int i=from; i<to; i++){
+			int slot = slots[i];
+			float mDiffX = posX[slot] - tx;
+			float mDiffY = posY[slot] - ty;
+			float mDistSq = mDiffX * mDiffX + mDiffY * mDiffY;
+			if (mDistSq < radiusSq) {
+				float mDist = (float) Math.sqrt(mDistSq);
+				// pull it in towards the target
+				accX[slot] -= (mDiffX/mDist) * factor;
+				accY[slot] -= (mDiffY/mDist) * factor;
+			}
+		}
+	}
+	
 	
 	/**
 	 * Get the Radius distance squared for 
@@ -1,5 +1,6 @@
 package net.r0adkll.flocking.rules;
 
+import net.r0adkll.flocking.FlockData;
 import net.r0adkll.flocking.Flockable;
 import net.r0adkll.flocking.utils.Vector2D;
 
@@ -29,5 +30,14 @@ public class WindRule extends AbstractRule{
 		// TODO Auto-generated method stub
 		return _wind;
 	}
+	
+	@Override
+	public void applyRule(FlockData data, int from, int to, float[] accX, float[] accY) {
+		float wx = _wind.x, wy = _wind.y;
+		for(int i=from; i<to; i++){
+			accX[i] += wx;
+			accY[i] += wy;
+		}
+	}
 
 }
@@ -0,0 +1,274 @@
+package net.r0adkll.flocking.utils;
+
+import java.util.List;
+
+/**
+ * A signed distance field sampled on a regular grid of nodes, node (i, j)
+ * sits at (originX + i * cellSize, originY + j * cellSize) and holds the
+ * distance from there to the nearest edge of the shapes the field was baked
+ * from, negative inside of them. In between the nodes the field is bilinearly
+ * interpolated, and the gradient of the interpolation points away from the
+ * nearest shape.
+ *
+ * Fields are baked once, from polygons with {@link #fromPolygons(List, float, float, float, int, int)}
+ * or from a bitmask with {@link #fromBitmask(boolean[], int, int, float, float, float)},
+ * after which any shape costs the same to look up.
+ *
+ * @author r0adkll
+ *
+ */
+public class DistanceField {
+
+	/**************************************************************************
+	 * Variables
+	 */
+
+	// The position of the first node and the spacing of the nodes
+	public float originX, originY;
+	public float cellSize;
+
+	// The number of nodes along each axis
+	public int width, height;
+
+	// The signed distance at each node, indexed by j * width + i
+	public float[] distance;
+
+
+	/**
+	 * Constructor, every node starts out at distance 0
+	 *
+	 * @param originX		the x position of the first node
+	 * @param originY		the y position of the first node
+	 * @param cellSize		the spacing of the nodes
+	 * @param width			the number of nodes along x
+	 * @param height		the number of nodes along y
+	 */
+	public DistanceField(float originX, float originY, float cellSize, int width, int height){
+		if(width < 2 || height < 2)
+			throw new IllegalArgumentException("A distance field needs at least 2x2 nodes");
+
+		this.originX = originX;
+		this.originY = originY;
+		this.cellSize = cellSize;
+		this.width = width;
+		this.height = height;
+		this.distance = new float[width * height];
+	}
+
+
+	/**************************************************************************
+	 * Baking Methods
+	 */
+
+	/**
+	 * Bake a field from polygons, the distance at every node is measured
+	 * exactly to the nearest polygon edge
+	 *
+	 * @param polygons		the polygons, each as its vertices x0, y0, x1, y1, ...
+	 * 						with the last vertex joined back up to the first
+	 * @param originX		the x position of the first node
+	 * @param originY		the y position of the first node
+	 * @param cellSize		the spacing of the nodes
+	 * @param width			the number of nodes along x
+	 * @param height		the number of nodes along y
+	 * @return				the baked field
+	 */
+	public static DistanceField fromPolygons(List<float[]> polygons, float originX, float originY,
+			float cellSize, int width, int height){
+		DistanceField field = new DistanceField(originX, originY, cellSize, width, height);
+
+		for(int j=0; j<height; j++){
+			float y = originY + j * cellSize;
+			for(int i=0; i<width; i++){
+				float x = originX + i * cellSize;
+
+				float nearestSq = Float.MAX_VALUE;
+				boolean inside = false;
+				for(int p=0; p<polygons.size(); p++){
+					float[] v = polygons.get(p);
+					int n = v.length / 2;
+					for(int a=0, b=n-1; a<n; b=a, a++){
+						float ax = v[a * 2], ay = v[a * 2 + 1];
+						float bx = v[b * 2], by = v[b * 2 + 1];
+
+						nearestSq = Math.min(nearestSq, segmentDistSq(x, y, ax, ay, bx, by));
+
+						// Even-odd crossing test, inside any polygon is inside the field
+						if((ay > y) != (by > y) && x < (bx - ax) * (y - ay) / (by - ay) + ax){
+							inside = !inside;
+						}
+					}
+				}
+
+				float d = polygons.isEmpty() ? Float.MAX_VALUE : (float)Math.sqrt(nearestSq);
+				field.distance[j * width + i] = inside ? -d : d;
+			}
+		}
+		return field;
+	}
+
+	/**
+	 * Bake a field from a bitmask with a two pass distance transform,
+	 * mask[j * width + i] is true where node (i, j) is solid. Each node counts
+	 * as a cell around it, so the edge of the shapes runs halfway between a
+	 * solid node and a clear one.
+	 *
+	 * @param mask			the bitmask, one entry per node
+	 * @param width			the number of nodes along x
+	 * @param height		the number of nodes along y
+	 * @param originX		the x position of the first node
+	 * @param originY		the y position of the first node
+	 * @param cellSize		the spacing of the nodes
+	 * @return				the baked field
+	 */
+	public static DistanceField fromBitmask(boolean[] mask, int width, int height,
+			float originX, float originY, float cellSize){
+		DistanceField field = new DistanceField(originX, originY, cellSize, width, height);
+
+		// The distance from each clear node to the nearest solid one, and back
+		float[] outside = transform(mask, width, height, true);
+		float[] inside = transform(mask, width, height, false);
+		for(int c=0; c<width * height; c++){
+			float d = mask[c] ? -(inside[c] - 0.5f) : outside[c] - 0.5f;
+			field.distance[c] = d * cellSize;
+		}
+		return field;
+	}
+
+	/**
+	 * Measure the distance, in nodes, from every node to the nearest node of
+	 * the other kind. Rather than summing up the steps like a plain chamfer
+	 * transform, each node carries the offset to its nearest node over from its
+	 * neighbours, which keeps the distance close to exact however far it goes.
+	 *
+	 * @param solid			true to measure to the nearest solid node, false to
+	 * 						measure to the nearest clear one
+	 */
+	private static float[] transform(boolean[] mask, int width, int height, boolean solid){
+		final int far = width + height;
+		int[] ox = new int[width * height];
+		int[] oy = new int[width * height];
+		for(int c=0; c<ox.length; c++){
+			ox[c] = oy[c] = mask[c] == solid ? 0 : far;
+		}
+
+		// Forward pass, from the top left
+		for(int j=0; j<height; j++){
+			for(int i=0; i<width; i++){
+				int c = j * width + i;
+				if(i > 0) propagate(ox, oy, c, c - 1, 1, 0);
+				if(j > 0){
+					propagate(ox, oy, c, c - width, 0, 1);
+					if(i > 0) propagate(ox, oy, c, c - width - 1, 1, 1);
+					if(i < width - 1) propagate(ox, oy, c, c - width + 1, -1, 1);
+				}
+			}
+			for(int i=width-2; i>=0; i--){
+				int c = j * width + i;
+				propagate(ox, oy, c, c + 1, -1, 0);
+			}
+		}
+
+		// Backward pass, from the bottom right
+		for(int j=height-1; j>=0; j--){
+			for(int i=width-1; i>=0; i--){
+				int c = j * width + i;
+				if(i < width - 1) propagate(ox, oy, c, c + 1, -1, 0);
+				if(j < height - 1){
+					propagate(ox, oy, c, c + width, 0, -1);
+					if(i < width - 1) propagate(ox, oy, c, c + width + 1, -1, -1);
+					if(i > 0) propagate(ox, oy, c, c + width - 1, 1, -1);
+				}
+			}
+			for(int i=1; i<width; i++){
+				int c = j * width + i;
+				propagate(ox, oy, c, c - 1, 1, 0);
+			}
+		}
+
+		float[] d = new float[width * height];
+		for(int c=0; c<d.length; c++){
+			d[c] = (float)Math.sqrt((float)ox[c] * ox[c] + (float)oy[c] * oy[c]);
+		}
+		return d;
+	}
+
+	/**
+	 * Take over the nearest node of a neighbour if it's nearer than a node's own
+	 *
+	 * @param c			the node
+	 * @param n			the neighbour
+	 * @param stepX		the offset from the neighbour to the node along x
+	 * @param stepY		the offset from the neighbour to the node along y
+	 */
+	private static void propagate(int[] ox, int[] oy, int c, int n, int stepX, int stepY){
+		int x = ox[n] + stepX, y = oy[n] + stepY;
+		if(x * x + y * y < ox[c] * ox[c] + oy[c] * oy[c]){
+			ox[c] = x;
+			oy[c] = y;
+		}
+	}
+
+	/**
+	 * Get the squared distance from a point to a line segment
+	 */
+	private static float segmentDistSq(float px, float py, float ax, float ay, float bx, float by){
+		float dx = bx - ax, dy = by - ay;
+		float lenSq = dx * dx + dy * dy;
+		float t = lenSq > 0 ? ((px - ax) * dx + (py - ay) * dy) / lenSq : 0;
+		t = MathUtils.clamp(t, 0f, 1f);
+		float ex = px - (ax + t * dx);
+		float ey = py - (ay + t * dy);
+		return ex * ex + ey * ey;
+	}
+
+
+	/**************************************************************************
+	 * Lookup Methods
+	 */
+
+	/**
+	 * Get the interpolated distance at a position
+	 *
+	 * @param x		the x position
+	 * @param y		the y position
+	 * @return		the signed distance, or Float.MAX_VALUE off the field
+	 * 				where there's nothing to be near
+	 */
+	public float sample(float x, float y){
+		return sample(x, y, null);
+	}
+
+	/**
+	 * Get the interpolated distance at a position along with the gradient of
+	 * the interpolation, which points away from the nearest shape
+	 *
+	 * @param x				the x position
+	 * @param y				the y position
+	 * @param gradient		the array to put the gradient along x and y in, or null.
+	 * 						It's left alone off the field
+	 * @return				the signed distance, or Float.MAX_VALUE off the field
+	 * 						where there's nothing to be near
+	 */
+	public float sample(float x, float y, float[] gradient){
+		float fx = (x - originX) / cellSize;
+		float fy = (y - originY) / cellSize;
+		if(!(fx >= 0 && fy >= 0 && fx < width - 1 && fy < height - 1)) return Float.MAX_VALUE;
+
+		// Bilinearly interpolate the 4 nodes around the position
+		int i = (int)fx, j = (int)fy;
+		float tx = fx - i, ty = fy - j;
+		int c = j * width + i;
+		float d00 = distance[c], d10 = distance[c + 1];
+		float d01 = distance[c + width], d11 = distance[c + width + 1];
+		float top = d00 + (d10 - d00) * tx;
+		float bottom = d01 + (d11 - d01) * tx;
+
+		if(gradient != null){
+			gradient[0] = ((d10 - d00) * (1 - ty) + (d11 - d01) * ty) / cellSize;
+			gradient[1] = (bottom - top) / cellSize;
+		}
+		return top + (bottom - top) * ty;
+	}
+
+}
@@ -0,0 +1,139 @@
+package net.r0adkll.flocking.utils;
+
+/**
+ * A field of force vectors sampled on a regular grid of nodes, node (i, j)
+ * sits at (originX + i * cellSize, originY + j * cellSize) and holds the force
+ * a boid feels there. In between the nodes the force is bilinearly
+ * interpolated, so currents, vortices or the slope of a terrain can be as
+ * detailed as the grid allows and still cost a single lookup.
+ *
+ * @author r0adkll
+ *
+ */
+public class FlowField {
+
+	/**************************************************************************
+	 * Variables
+	 */
+
+	// The position of the first node and the spacing of the nodes
+	public float originX, originY;
+	public float cellSize;
+
+	// The number of nodes along each axis
+	public int width, height;
+
+	// The force at each node, indexed by j * width + i
+	public float[] forceX, forceY;
+
+
+	/**
+	 * Constructor, every node starts out without any force
+	 *
+	 * @param originX		the x position of the first node
+	 * @param originY		the y position of the first node
+	 * @param cellSize		the spacing of the nodes
+	 * @param width			the number of nodes along x
+	 * @param height		the number of nodes along y
+	 */
+	public FlowField(float originX, float originY, float cellSize, int width, int height){
+		if(width < 2 || height < 2)
+			throw new IllegalArgumentException("A flow field needs at least 2x2 nodes");
+
+		this.originX = originX;
+		this.originY = originY;
+		this.cellSize = cellSize;
+		this.width = width;
+		this.height = height;
+		this.forceX = new float[width * height];
+		this.forceY = new float[width * height];
+	}
+
+	/**
+	 * Copy Constructor
+	 * @param field		the field to copy
+	 */
+	public FlowField(FlowField field){
+		this(field.originX, field.originY, field.cellSize, field.width, field.height);
+		System.arraycopy(field.forceX, 0, forceX, 0, forceX.length);
+		System.arraycopy(field.forceY, 0, forceY, 0, forceY.length);
+	}
+
+
+	/**************************************************************************
+	 * Editing Methods
+	 */
+
+	/**
+	 * Set the force at a node
+	 *
+	 * @param i		the node along x
+	 * @param j		the node along y
+	 * @param fx	the force along x
+	 * @param fy	the force along y
+	 */
+	public void set(int i, int j, float fx, float fy){
+		int c = j * width + i;
+		forceX[c] = fx;
+		forceY[c] = fy;
+	}
+
+	/**
+	 * Copy a block of nodes over from another field of the same size
+	 *
+	 * @param src		the field to copy from
+	 * @param i0		the first node along x
+	 * @param j0		the first node along y
+	 * @param i1		the last node along x, inclusive
+	 * @param j1		the last node along y, inclusive
+	 */
+	public void copyRegion(FlowField src, int i0, int j0, int i1, int j1){
+		if(src.width != width || src.height != height)
+			throw new IllegalArgumentException("The flow fields aren't the same size");
+
+		i0 = Math.max(i0, 0);
+		j0 = Math.max(j0, 0);
+		i1 = Math.min(i1, width - 1);
+		j1 = Math.min(j1, height - 1);
+		if(i0 > i1) return;
+
+		int length = i1 - i0 + 1;
+		for(int j=j0; j<=j1; j++){
+			int c = j * width + i0;
+			System.arraycopy(src.forceX, c, forceX, c, length);
+			System.arraycopy(src.forceY, c, forceY, c, length);
+		}
+	}
+
+
+	/**************************************************************************
+	 * Lookup Methods
+	 */
+
+	/**
+	 * Get the interpolated force at a position, off the field there's no force
+	 *
+	 * @param x			the x position
+	 * @param y			the y position
+	 * @param result	the vector to store the force in
+	 * @return			the result vector
+	 */
+	public Vector2D sample(float x, float y, Vector2D result){
+		float fx = (x - originX) / cellSize;
+		float fy = (y - originY) / cellSize;
+		if(!(fx >= 0 && fy >= 0 && fx < width - 1 && fy < height - 1)) return result.set(0, 0);
+
+		// Bilinearly interpolate the 4 nodes around the position
+		int i = (int)fx, j = (int)fy;
+		float tx = fx - i, ty = fy - j;
+
+		int c = j * width + i;
+		float topX = forceX[c] + (forceX[c + 1] - forceX[c]) * tx;
+		float bottomX = forceX[c + width] + (forceX[c + width + 1] - forceX[c + width]) * tx;
+		float topY = forceY[c] + (forceY[c + 1] - forceY[c]) * tx;
+		float bottomY = forceY[c + width] + (forceY[c + width + 1] - forceY[c + width]) * tx;
+		result.set(topX + (bottomX - topX) * ty, topY + (bottomY - topY) * ty);
+		return result;
+	}
+
+}
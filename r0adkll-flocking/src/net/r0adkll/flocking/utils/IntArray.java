@@ -0,0 +1,94 @@
+package net.r0adkll.flocking.utils;
+
+/**
+ * A resizable, ordered array of primitive ints, used to pass
+ * boid slot indices around without boxing them
+ *
+ * @author r0adkll
+ */
+public class IntArray {
+
+	/**
+	 * Variables
+	 */
+	public int[] items;
+	public int size;
+
+
+	/****************************************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * Default Constructor
+	 */
+	public IntArray(){
+		this(16);
+	}
+
+	/**
+	 * Capacity Constructor
+	 * @param capacity		the initial capacity of the backing array
+	 */
+	public IntArray(int capacity){
+		items = new int[capacity];
+	}
+
+
+	/****************************************************************************
+	 * Array Methods
+	 */
+
+	/**
+	 * Add a value to the end of the array
+	 * @param value
+	 */
+	public void add(int value){
+		if(size == items.length) ensureCapacity(1);
+		items[size++] = value;
+	}
+
+	/**
+	 * Add a range of values to the end of the array
+	 * @param array		the values to copy from
+	 * @param offset	the first value to copy
+	 * @param count		the number of values to copy
+	 */
+	public void addAll(int[] array, int offset, int count){
+		if(size + count > items.length) ensureCapacity(count);
+		System.arraycopy(array, offset, items, size, count);
+		size += count;
+	}
+
+	/**
+	 * Get the value at an index
+	 * @param index
+	 * @return
+	 */
+	public int get(int index){
+		return items[index];
+	}
+
+	/**
+	 * Empty the array, the backing array is kept
+	 */
+	public void clear(){
+		size = 0;
+	}
+
+	/**
+	 * Make sure there is room for the given number of additional values
+	 * @param additional	the number of values about to be added
+	 * @return				the backing array
+	 */
+	public int[] ensureCapacity(int additional){
+		int needed = size + additional;
+		if(needed > items.length){
+			int[] grown = new int[Math.max(8, Math.max(needed, items.length * 2))];
+			System.arraycopy(items, 0, grown, 0, size);
+			items = grown;
+		}
+		return items;
+	}
+
+}
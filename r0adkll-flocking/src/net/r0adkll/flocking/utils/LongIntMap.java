@@ -0,0 +1,159 @@
+package net.r0adkll.flocking.utils;
+
+import java.util.Arrays;
+
+/**
+ * An open addressing hash map from primitive longs to primitive ints,
+ * using linear probing and backward shift deletion so no tombstones are
+ * ever left behind. Nothing is boxed or allocated unless the map grows.
+ *
+ * The key {@link #EMPTY} marks unused buckets and can't be stored.
+ *
+ * @author r0adkll
+ */
+public class LongIntMap {
+
+	/**
+	 * Constants
+	 */
+	public static final long EMPTY = Long.MIN_VALUE;
+
+	/**
+	 * Variables
+	 */
+	private long[] keys;
+	private int[] values;
+	private int mask;
+	private int shift;
+	public int size;
+
+
+	/****************************************************************************
+	 * Constructors
+	 */
+
+	/**
+	 * Default Constructor
+	 */
+	public LongIntMap(){
+		this(32);
+	}
+
+	/**
+	 * Capacity Constructor
+	 * @param capacity		the number of entries to make room for
+	 */
+	public LongIntMap(int capacity){
+		allocate(MathUtils.nextPowerOfTwo(Math.max(capacity * 2, 8)));
+	}
+
+
+	/****************************************************************************
+	 * Map Methods
+	 */
+
+	/**
+	 * Get the value of a key
+	 * @param key
+	 * @param defaultValue	the value to return if the key isn't in the map
+	 * @return
+	 */
+	public int get(long key, int defaultValue){
+		long[] keys = this.keys;
+		for(int i = bucket(key); ; i = (i + 1) & mask){
+			long k = keys[i];
+			if(k == key) return values[i];
+			if(k == EMPTY) return defaultValue;
+		}
+	}
+
+	/**
+	 * Set the value of a key
+	 * @param key
+	 * @param value
+	 */
+	public void put(long key, int value){
+		long[] keys = this.keys;
+		int i = bucket(key);
+		for(; ; i = (i + 1) & mask){
+			long k = keys[i];
+			if(k == key){
+				values[i] = value;
+				return;
+			}
+			if(k == EMPTY) break;
+		}
+
+		keys[i] = key;
+		values[i] = value;
+		if(++size * 2 > keys.length) resize(keys.length * 2);
+	}
+
+	/**
+	 * Remove a key
+	 * @param key
+	 * @param defaultValue	the value to return if the key isn't in the map
+	 * @return				the value the key had
+	 */
+	public int remove(long key, int defaultValue){
+		long[] keys = this.keys;
+		int i = bucket(key);
+		for(; ; i = (i + 1) & mask){
+			long k = keys[i];
+			if(k == key) break;
+			if(k == EMPTY) return defaultValue;
+		}
+		int value = values[i];
+
+		// Shift the rest of the probe run back so lookups never stop early
+		int hole = i;
+		for(int j = (hole + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask){
+			int home = bucket(keys[j]);
+			if(((j - home) & mask) >= ((j - hole) & mask)){
+				keys[hole] = keys[j];
+				values[hole] = values[j];
+				hole = j;
+			}
+		}
+		keys[hole] = EMPTY;
+		size--;
+		return value;
+	}
+
+	/**
+	 * Remove every key, the buckets are kept
+	 */
+	public void clear(){
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+
+	/****************************************************************************
+	 * Helper Methods
+	 */
+
+	private int bucket(long key){
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int)(h >>> shift);
+	}
+
+	private void allocate(int capacity){
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity - 1;
+		shift = Long.numberOfLeadingZeros(mask);
+	}
+
+	private void resize(int capacity){
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		size = 0;
+		for(int i=0; i<oldKeys.length; i++){
+			if(oldKeys[i] != EMPTY) put(oldKeys[i], oldValues[i]);
+		}
+	}
+
+}
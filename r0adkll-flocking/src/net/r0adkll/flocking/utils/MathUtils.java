@@ -203,6 +203,26 @@ public class MathUtils {
 
 	// ---
 
+	/** Wraps a value into the range from min (inclusive) to min + size (exclusive), as on a torus. */
+	static public float wrap (float value, float min, float size) {
+		float v = (value - min) % size;
+		if (v < 0) v += size;
+		// adding size to a tiny negative remainder can round up to size
+		if (v >= size) v = 0;
+		return min + v;
+	}
+
+	/** Returns the shortest difference between two coordinates that wrap every size units, the minimum image. Both coordinates
+	 * must already be wrapped into the same range. */
+	static public float nearestImage (float delta, float size) {
+		float half = size * 0.5f;
+		if (delta > half) return delta - size;
+		if (delta < -half) return delta + size;
+		return delta;
+	}
+
+	// ---
+
 	static private final int BIG_ENOUGH_INT = 16 * 1024;
 	static private final double BIG_ENOUGH_FLOOR = BIG_ENOUGH_INT;
 	static private final double CEIL = 0.9999999;